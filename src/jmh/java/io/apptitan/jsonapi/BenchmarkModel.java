@@ -0,0 +1,640 @@
+package io.apptitan.jsonapi;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Resources and mappers shared by the benchmarks.
+ */
+public final class BenchmarkModel {
+
+    public enum Status {
+        PENDING, SHIPPED, DELIVERED
+    }
+
+    public static class Customer {
+        @Id
+        private Long id;
+        private String name;
+        private String email;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public void setEmail(final String email) {
+            this.email = email;
+        }
+    }
+
+    public static class Order {
+        @Id
+        private Long id;
+        private String reference;
+        private Double total;
+        private Date placedAt;
+        private Boolean paid;
+        private Status status;
+        @ManyToOne
+        private Customer customer;
+        @OneToMany
+        private List<Order> lines;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getReference() {
+            return reference;
+        }
+
+        public void setReference(final String reference) {
+            this.reference = reference;
+        }
+
+        public Double getTotal() {
+            return total;
+        }
+
+        public void setTotal(final Double total) {
+            this.total = total;
+        }
+
+        public Date getPlacedAt() {
+            return placedAt;
+        }
+
+        public void setPlacedAt(final Date placedAt) {
+            this.placedAt = placedAt;
+        }
+
+        public Boolean getPaid() {
+            return paid;
+        }
+
+        public void setPaid(final Boolean paid) {
+            this.paid = paid;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(final Status status) {
+            this.status = status;
+        }
+
+        public Customer getCustomer() {
+            return customer;
+        }
+
+        public void setCustomer(final Customer customer) {
+            this.customer = customer;
+        }
+
+        public List<Order> getLines() {
+            return lines;
+        }
+
+        public void setLines(final List<Order> lines) {
+            this.lines = lines;
+        }
+    }
+
+    public static class Category {
+        @Id
+        private Long id;
+        private String name;
+        @ManyToOne
+        private Category parent;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(final String name) {
+            this.name = name;
+        }
+
+        public Category getParent() {
+            return parent;
+        }
+
+        public void setParent(final Category parent) {
+            this.parent = parent;
+        }
+    }
+
+    public static class WideResource {
+        @Id
+        private Long id;
+        private String column1;
+        private Long column2;
+        private String column3;
+        private Long column4;
+        private String column5;
+        private Long column6;
+        private String column7;
+        private Long column8;
+        private String column9;
+        private Long column10;
+        private String column11;
+        private Long column12;
+        private String column13;
+        private Long column14;
+        private String column15;
+        private Long column16;
+        private String column17;
+        private Long column18;
+        private String column19;
+        private Long column20;
+        private String column21;
+        private Long column22;
+        private String column23;
+        private Long column24;
+        private String column25;
+        private Long column26;
+        private String column27;
+        private Long column28;
+        private String column29;
+        private Long column30;
+        private String column31;
+        private Long column32;
+        private String column33;
+        private Long column34;
+        private String column35;
+        private Long column36;
+        private String column37;
+        private Long column38;
+        private String column39;
+        private Long column40;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getColumn1() {
+            return column1;
+        }
+
+        public void setColumn1(final String column1) {
+            this.column1 = column1;
+        }
+
+        public Long getColumn2() {
+            return column2;
+        }
+
+        public void setColumn2(final Long column2) {
+            this.column2 = column2;
+        }
+
+        public String getColumn3() {
+            return column3;
+        }
+
+        public void setColumn3(final String column3) {
+            this.column3 = column3;
+        }
+
+        public Long getColumn4() {
+            return column4;
+        }
+
+        public void setColumn4(final Long column4) {
+            this.column4 = column4;
+        }
+
+        public String getColumn5() {
+            return column5;
+        }
+
+        public void setColumn5(final String column5) {
+            this.column5 = column5;
+        }
+
+        public Long getColumn6() {
+            return column6;
+        }
+
+        public void setColumn6(final Long column6) {
+            this.column6 = column6;
+        }
+
+        public String getColumn7() {
+            return column7;
+        }
+
+        public void setColumn7(final String column7) {
+            this.column7 = column7;
+        }
+
+        public Long getColumn8() {
+            return column8;
+        }
+
+        public void setColumn8(final Long column8) {
+            this.column8 = column8;
+        }
+
+        public String getColumn9() {
+            return column9;
+        }
+
+        public void setColumn9(final String column9) {
+            this.column9 = column9;
+        }
+
+        public Long getColumn10() {
+            return column10;
+        }
+
+        public void setColumn10(final Long column10) {
+            this.column10 = column10;
+        }
+
+        public String getColumn11() {
+            return column11;
+        }
+
+        public void setColumn11(final String column11) {
+            this.column11 = column11;
+        }
+
+        public Long getColumn12() {
+            return column12;
+        }
+
+        public void setColumn12(final Long column12) {
+            this.column12 = column12;
+        }
+
+        public String getColumn13() {
+            return column13;
+        }
+
+        public void setColumn13(final String column13) {
+            this.column13 = column13;
+        }
+
+        public Long getColumn14() {
+            return column14;
+        }
+
+        public void setColumn14(final Long column14) {
+            this.column14 = column14;
+        }
+
+        public String getColumn15() {
+            return column15;
+        }
+
+        public void setColumn15(final String column15) {
+            this.column15 = column15;
+        }
+
+        public Long getColumn16() {
+            return column16;
+        }
+
+        public void setColumn16(final Long column16) {
+            this.column16 = column16;
+        }
+
+        public String getColumn17() {
+            return column17;
+        }
+
+        public void setColumn17(final String column17) {
+            this.column17 = column17;
+        }
+
+        public Long getColumn18() {
+            return column18;
+        }
+
+        public void setColumn18(final Long column18) {
+            this.column18 = column18;
+        }
+
+        public String getColumn19() {
+            return column19;
+        }
+
+        public void setColumn19(final String column19) {
+            this.column19 = column19;
+        }
+
+        public Long getColumn20() {
+            return column20;
+        }
+
+        public void setColumn20(final Long column20) {
+            this.column20 = column20;
+        }
+
+        public String getColumn21() {
+            return column21;
+        }
+
+        public void setColumn21(final String column21) {
+            this.column21 = column21;
+        }
+
+        public Long getColumn22() {
+            return column22;
+        }
+
+        public void setColumn22(final Long column22) {
+            this.column22 = column22;
+        }
+
+        public String getColumn23() {
+            return column23;
+        }
+
+        public void setColumn23(final String column23) {
+            this.column23 = column23;
+        }
+
+        public Long getColumn24() {
+            return column24;
+        }
+
+        public void setColumn24(final Long column24) {
+            this.column24 = column24;
+        }
+
+        public String getColumn25() {
+            return column25;
+        }
+
+        public void setColumn25(final String column25) {
+            this.column25 = column25;
+        }
+
+        public Long getColumn26() {
+            return column26;
+        }
+
+        public void setColumn26(final Long column26) {
+            this.column26 = column26;
+        }
+
+        public String getColumn27() {
+            return column27;
+        }
+
+        public void setColumn27(final String column27) {
+            this.column27 = column27;
+        }
+
+        public Long getColumn28() {
+            return column28;
+        }
+
+        public void setColumn28(final Long column28) {
+            this.column28 = column28;
+        }
+
+        public String getColumn29() {
+            return column29;
+        }
+
+        public void setColumn29(final String column29) {
+            this.column29 = column29;
+        }
+
+        public Long getColumn30() {
+            return column30;
+        }
+
+        public void setColumn30(final Long column30) {
+            this.column30 = column30;
+        }
+
+        public String getColumn31() {
+            return column31;
+        }
+
+        public void setColumn31(final String column31) {
+            this.column31 = column31;
+        }
+
+        public Long getColumn32() {
+            return column32;
+        }
+
+        public void setColumn32(final Long column32) {
+            this.column32 = column32;
+        }
+
+        public String getColumn33() {
+            return column33;
+        }
+
+        public void setColumn33(final String column33) {
+            this.column33 = column33;
+        }
+
+        public Long getColumn34() {
+            return column34;
+        }
+
+        public void setColumn34(final Long column34) {
+            this.column34 = column34;
+        }
+
+        public String getColumn35() {
+            return column35;
+        }
+
+        public void setColumn35(final String column35) {
+            this.column35 = column35;
+        }
+
+        public Long getColumn36() {
+            return column36;
+        }
+
+        public void setColumn36(final Long column36) {
+            this.column36 = column36;
+        }
+
+        public String getColumn37() {
+            return column37;
+        }
+
+        public void setColumn37(final String column37) {
+            this.column37 = column37;
+        }
+
+        public Long getColumn38() {
+            return column38;
+        }
+
+        public void setColumn38(final Long column38) {
+            this.column38 = column38;
+        }
+
+        public String getColumn39() {
+            return column39;
+        }
+
+        public void setColumn39(final String column39) {
+            this.column39 = column39;
+        }
+
+        public Long getColumn40() {
+            return column40;
+        }
+
+        public void setColumn40(final Long column40) {
+            this.column40 = column40;
+        }
+    }
+
+    private BenchmarkModel() {
+        // Intentionally private
+    }
+
+    /**
+     * @return a mapper writing and reading every benchmark resource as JSON API
+     */
+    @SuppressWarnings("unchecked")
+    public static ObjectMapper jsonApiMapper() {
+        final SimpleModule module = new SimpleModule();
+        for (final Class<?> type : new Class<?>[] { Customer.class, Order.class, Category.class, WideResource.class }) {
+            module.addSerializer((Class<Object>) type, new JsonApiSerializer());
+            module.addDeserializer((Class<Object>) type, new JsonApiDeserializer());
+        }
+        return new ObjectMapper().registerModule(module);
+    }
+
+    public static Order order(final long id) {
+        final Customer customer = new Customer();
+        customer.setId(id % 100);
+        customer.setName("Customer " + customer.getId());
+        customer.setEmail("customer" + customer.getId() + "@example.com");
+
+        final Order order = new Order();
+        order.setId(id);
+        order.setReference("ORD-" + id);
+        order.setTotal(id * 1.5);
+        order.setPlacedAt(new Date(1444435200000L + id));
+        order.setPaid((id % 2) == 0);
+        order.setStatus(Status.values()[(int) (id % Status.values().length)]);
+        order.setCustomer(customer);
+        order.setLines(new ArrayList<>());
+        return order;
+    }
+
+    public static List<Order> orders(final int size) {
+        final List<Order> orders = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            orders.add(order(i));
+        }
+        return orders;
+    }
+
+    /**
+     * @return the last of {@code depth} categories, each the parent of the next
+     */
+    public static Category categoryChain(final int depth) {
+        Category parent = null;
+        for (int i = 0; i < depth; i++) {
+            final Category category = new Category();
+            category.setId((long) i);
+            category.setName("Category " + i);
+            category.setParent(parent);
+            parent = category;
+        }
+        return parent;
+    }
+
+    public static WideResource wideResource(final long id) {
+        final WideResource resource = new WideResource();
+        resource.setId(id);
+        resource.setColumn1("value 1");
+        resource.setColumn2(id + 2L);
+        resource.setColumn3("value 3");
+        resource.setColumn4(id + 4L);
+        resource.setColumn5("value 5");
+        resource.setColumn6(id + 6L);
+        resource.setColumn7("value 7");
+        resource.setColumn8(id + 8L);
+        resource.setColumn9("value 9");
+        resource.setColumn10(id + 10L);
+        resource.setColumn11("value 11");
+        resource.setColumn12(id + 12L);
+        resource.setColumn13("value 13");
+        resource.setColumn14(id + 14L);
+        resource.setColumn15("value 15");
+        resource.setColumn16(id + 16L);
+        resource.setColumn17("value 17");
+        resource.setColumn18(id + 18L);
+        resource.setColumn19("value 19");
+        resource.setColumn20(id + 20L);
+        resource.setColumn21("value 21");
+        resource.setColumn22(id + 22L);
+        resource.setColumn23("value 23");
+        resource.setColumn24(id + 24L);
+        resource.setColumn25("value 25");
+        resource.setColumn26(id + 26L);
+        resource.setColumn27("value 27");
+        resource.setColumn28(id + 28L);
+        resource.setColumn29("value 29");
+        resource.setColumn30(id + 30L);
+        resource.setColumn31("value 31");
+        resource.setColumn32(id + 32L);
+        resource.setColumn33("value 33");
+        resource.setColumn34(id + 34L);
+        resource.setColumn35("value 35");
+        resource.setColumn36(id + 36L);
+        resource.setColumn37("value 37");
+        resource.setColumn38(id + 38L);
+        resource.setColumn39("value 39");
+        resource.setColumn40(id + 40L);
+        return resource;
+    }
+}
@@ -0,0 +1,29 @@
+package io.apptitan.jsonapi;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it, keeping only a count of the bytes.
+ */
+final class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(final int b) {
+        count++;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        count += len;
+    }
+
+    /**
+     * @return the bytes written since the last reset
+     */
+    long reset() {
+        final long written = count;
+        count = 0;
+        return written;
+    }
+}
@@ -0,0 +1,70 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apptitan.jsonapi.BenchmarkModel.Order;
+
+/**
+ * Writes collection documents of orders as JSON API, next to plain Jackson writing the same list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonApiCollectionBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    private final CountingOutputStream out = new CountingOutputStream();
+    private ObjectMapper jsonApiMapper;
+    private ObjectMapper plainMapper;
+    private List<Order> orders;
+    private JsonApiResponse response;
+    private JsonApiResponse compoundResponse;
+
+    @Setup
+    public void setUp() {
+        jsonApiMapper = BenchmarkModel.jsonApiMapper();
+        plainMapper = new ObjectMapper();
+        orders = BenchmarkModel.orders(size);
+        response = new JsonApiResponse.Builder(orders).build();
+        compoundResponse = new JsonApiResponse.Builder(orders).includePaths("customer").build();
+    }
+
+    @Benchmark
+    public long orders() throws IOException {
+        jsonApiMapper.writeValue(out, response);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long ordersWithCustomers() throws IOException {
+        jsonApiMapper.writeValue(out, compoundResponse);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long ordersPlainJackson() throws IOException {
+        plainMapper.writeValue(out, orders);
+        return out.reset();
+    }
+}
@@ -0,0 +1,73 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apptitan.jsonapi.BenchmarkModel.Order;
+import io.apptitan.jsonapi.BenchmarkModel.WideResource;
+
+/**
+ * Reads single resource documents as JSON API, each next to plain Jackson reading the same object.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonApiDeserializerBenchmark {
+
+    private ObjectMapper jsonApiMapper;
+    private ObjectMapper plainMapper;
+    private byte[] order;
+    private byte[] orderPlain;
+    private byte[] wideResource;
+    private byte[] wideResourcePlain;
+
+    @Setup
+    public void setUp() throws IOException {
+        jsonApiMapper = BenchmarkModel.jsonApiMapper();
+        plainMapper = new ObjectMapper();
+
+        final Order source = BenchmarkModel.order(42);
+        order = jsonApiMapper.writeValueAsBytes(new JsonApiResponse.Builder(source).build());
+        orderPlain = plainMapper.writeValueAsBytes(source);
+
+        final WideResource wideSource = BenchmarkModel.wideResource(42);
+        wideResource = jsonApiMapper.writeValueAsBytes(new JsonApiResponse.Builder(wideSource).build());
+        wideResourcePlain = plainMapper.writeValueAsBytes(wideSource);
+    }
+
+    @Benchmark
+    public Object order() throws IOException {
+        return jsonApiMapper.readValue(order, Order.class);
+    }
+
+    @Benchmark
+    public Object orderPlainJackson() throws IOException {
+        return plainMapper.readValue(orderPlain, Order.class);
+    }
+
+    @Benchmark
+    public Object wideResource() throws IOException {
+        return jsonApiMapper.readValue(wideResource, WideResource.class);
+    }
+
+    @Benchmark
+    public Object wideResourcePlainJackson() throws IOException {
+        return plainMapper.readValue(wideResourcePlain, WideResource.class);
+    }
+}
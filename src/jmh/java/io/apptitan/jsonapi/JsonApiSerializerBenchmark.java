@@ -0,0 +1,96 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apptitan.jsonapi.BenchmarkModel.Category;
+import io.apptitan.jsonapi.BenchmarkModel.Order;
+import io.apptitan.jsonapi.BenchmarkModel.WideResource;
+
+/**
+ * Writes single resources as JSON API, each next to the plain Jackson output of the same object. The order
+ * benchmarks cover a belongsTo and an enum relationship, the chain benchmarks a compound document included through
+ * a deep belongsTo chain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonApiSerializerBenchmark {
+
+    private static final int CHAIN_DEPTH = 8;
+
+    private final CountingOutputStream out = new CountingOutputStream();
+    private ObjectMapper jsonApiMapper;
+    private ObjectMapper plainMapper;
+    private Order order;
+    private WideResource wideResource;
+    private Category category;
+    private JsonApiResponse chainResponse;
+
+    @Setup
+    public void setUp() {
+        jsonApiMapper = BenchmarkModel.jsonApiMapper();
+        plainMapper = new ObjectMapper();
+        order = BenchmarkModel.order(42);
+        wideResource = BenchmarkModel.wideResource(42);
+        category = BenchmarkModel.categoryChain(CHAIN_DEPTH);
+
+        final StringBuilder path = new StringBuilder("parent");
+        for (int i = 2; i < CHAIN_DEPTH; i++) {
+            path.append(".parent");
+        }
+        chainResponse = new JsonApiResponse.Builder(category).includePaths(path.toString()).build();
+    }
+
+    @Benchmark
+    public long order() throws IOException {
+        jsonApiMapper.writeValue(out, order);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long orderPlainJackson() throws IOException {
+        plainMapper.writeValue(out, order);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long wideResource() throws IOException {
+        jsonApiMapper.writeValue(out, wideResource);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long wideResourcePlainJackson() throws IOException {
+        plainMapper.writeValue(out, wideResource);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long belongsToChain() throws IOException {
+        jsonApiMapper.writeValue(out, chainResponse);
+        return out.reset();
+    }
+
+    @Benchmark
+    public long belongsToChainPlainJackson() throws IOException {
+        plainMapper.writeValue(out, category);
+        return out.reset();
+    }
+}
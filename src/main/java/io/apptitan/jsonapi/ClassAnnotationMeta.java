@@ -0,0 +1,37 @@
+package io.apptitan.jsonapi;
+
+import org.atteo.evo.inflector.English;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * The singular and plural names of a resource class, as given by {@link JsonApiResource} or else derived from the
+ * class name.
+ */
+class ClassAnnotationMeta {
+    private final String plural;
+    private final String singular;
+
+    public ClassAnnotationMeta(final Class<?> clazz, final CaseFormat fromFormat, final CaseFormat toFormat) {
+        String singular = fromFormat.to(toFormat, clazz.getSimpleName());
+        String plural = English.plural(singular);
+
+        final JsonApiResource[] annotations = clazz.getAnnotationsByType(JsonApiResource.class);
+        if (annotations.length > 0) {
+            final JsonApiResource jsonApiResourceAnnotation = annotations[0];
+            singular = jsonApiResourceAnnotation.singular();
+            plural = jsonApiResourceAnnotation.plural();
+        }
+
+        this.singular = singular;
+        this.plural = plural;
+    }
+
+    public String getPlural() {
+        return plural;
+    }
+
+    public String getSingular() {
+        return singular;
+    }
+}
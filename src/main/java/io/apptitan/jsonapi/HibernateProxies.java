@@ -0,0 +1,122 @@
+package io.apptitan.jsonapi;
+
+import java.lang.reflect.Method;
+
+/**
+ * Reads Hibernate proxies through their {@code LazyInitializer}, reflectively so Hibernate stays an optional
+ * dependency.
+ */
+final class HibernateProxies {
+
+    private static final String HIBERNATE_PROXY = "org.hibernate.proxy.HibernateProxy";
+
+    /**
+     * {@code PersistentCollection} of Hibernate 4 and later, and of Hibernate 3
+     */
+    private static final String[] PERSISTENT_COLLECTIONS = {
+            "org.hibernate.collection.spi.PersistentCollection", "org.hibernate.collection.PersistentCollection" };
+
+    /**
+     * Methods used to read a proxy class
+     */
+    private static final class ProxyMethods {
+        private final Method lazyInitializer;
+        private final Method identifier;
+        private final Method persistentClass;
+        private final Method uninitialized;
+
+        ProxyMethods(final Class<?> proxyInterface) throws NoSuchMethodException {
+            this.lazyInitializer = proxyInterface.getMethod("getHibernateLazyInitializer");
+            final Class<?> initializer = lazyInitializer.getReturnType();
+            this.identifier = initializer.getMethod("getIdentifier");
+            this.persistentClass = initializer.getMethod("getPersistentClass");
+            this.uninitialized = initializer.getMethod("isUninitialized");
+        }
+    }
+
+    /**
+     * Methods of each class implementing {@code HibernateProxy}, null for every other class
+     */
+    private static final ClassValue<ProxyMethods> PROXIES = new ClassValue<ProxyMethods>() {
+        @Override
+        protected ProxyMethods computeValue(final Class<?> type) {
+            final Class<?> proxyInterface = findInterface(type, HIBERNATE_PROXY);
+            if (proxyInterface == null) {
+                return null;
+            }
+            try {
+                return new ProxyMethods(proxyInterface);
+            } catch (final NoSuchMethodException e) {
+                return null;
+            }
+        }
+    };
+
+    /**
+     * {@code wasInitialized} of each class implementing {@code PersistentCollection}, null for every other class
+     */
+    private static final ClassValue<Method> COLLECTIONS = new ClassValue<Method>() {
+        @Override
+        protected Method computeValue(final Class<?> type) {
+            for (final String name : PERSISTENT_COLLECTIONS) {
+                final Class<?> collectionInterface = findInterface(type, name);
+                if (collectionInterface != null) {
+                    try {
+                        return collectionInterface.getMethod("wasInitialized");
+                    } catch (final NoSuchMethodException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+    };
+
+    private HibernateProxies() {
+        // Intentionally private
+    }
+
+    private static Class<?> findInterface(final Class<?> type, final String name) {
+        for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+            for (final Class<?> implemented : current.getInterfaces()) {
+                if (name.equals(implemented.getName())) {
+                    return implemented;
+                }
+                final Class<?> inherited = findInterface(implemented, name);
+                if (inherited != null) {
+                    return inherited;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the identifier of {@code resource} if it is a Hibernate proxy, otherwise null
+     */
+    static Object identifier(final Object resource) throws ReflectiveOperationException {
+        final ProxyMethods methods = PROXIES.get(resource.getClass());
+        return (methods != null) ? methods.identifier.invoke(methods.lazyInitializer.invoke(resource)) : null;
+    }
+
+    /**
+     * @return the entity class {@code resource} stands in for if it is a Hibernate proxy, otherwise null
+     */
+    static Class<?> persistentClass(final Object resource) throws ReflectiveOperationException {
+        final ProxyMethods methods = PROXIES.get(resource.getClass());
+        return (methods != null) ? (Class<?>) methods.persistentClass.invoke(methods.lazyInitializer.invoke(resource))
+                : null;
+    }
+
+    /**
+     * @return false if {@code related} is a Hibernate proxy or persistent collection that has not been loaded yet
+     */
+    static boolean isInitialized(final Object related) throws ReflectiveOperationException {
+        final ProxyMethods methods = PROXIES.get(related.getClass());
+        if (methods != null) {
+            return !(Boolean) methods.uninitialized.invoke(methods.lazyInitializer.invoke(related));
+        }
+        final Method wasInitialized = COLLECTIONS.get(related.getClass());
+        return (wasInitialized == null) || (Boolean) wasInitialized.invoke(related);
+    }
+}
@@ -0,0 +1,15 @@
+package io.apptitan.jsonapi;
+
+import java.beans.PropertyDescriptor;
+
+/**
+ * Creates the {@link JsonApiPropertyAccessor}s used to read and write resource properties. See
+ * {@link JsonApiAccessors} for the built in strategies.
+ */
+public interface JsonApiAccessorStrategy {
+
+    /**
+     * @return an accessor for the property described by {@code descriptor} on {@code type}
+     */
+    JsonApiPropertyAccessor accessor(Class<?> type, PropertyDescriptor descriptor);
+}
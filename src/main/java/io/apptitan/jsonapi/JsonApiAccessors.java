@@ -0,0 +1,114 @@
+package io.apptitan.jsonapi;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * Built in {@link JsonApiAccessorStrategy} implementations.
+ */
+public enum JsonApiAccessors implements JsonApiAccessorStrategy {
+
+    /**
+     * Binds the getter and setter of each property to a {@link MethodHandle} once, falling back to
+     * {@link #BEAN_UTILS} for properties whose methods cannot be made accessible.
+     */
+    METHOD_HANDLES {
+        @Override
+        public JsonApiPropertyAccessor accessor(final Class<?> type, final PropertyDescriptor descriptor) {
+            try {
+                return new MethodHandleAccessor(descriptor.getName(), type,
+                        unreflect(descriptor.getReadMethod(), GETTER_TYPE),
+                        unreflect(descriptor.getWriteMethod(), SETTER_TYPE));
+            } catch (IllegalAccessException | RuntimeException e) {
+                return BEAN_UTILS.accessor(type, descriptor);
+            }
+        }
+    },
+
+    /**
+     * Looks up every read and write through commons-beanutils {@link PropertyUtils}.
+     */
+    BEAN_UTILS {
+        @Override
+        public JsonApiPropertyAccessor accessor(final Class<?> type, final PropertyDescriptor descriptor) {
+            return new BeanUtilsAccessor(descriptor.getName());
+        }
+    };
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static MethodHandle unreflect(final Method method, final MethodType type) throws IllegalAccessException {
+        if (method == null) {
+            return null;
+        }
+        method.setAccessible(true);
+        return MethodHandles.lookup().unreflect(method).asType(type);
+    }
+
+    private static final class MethodHandleAccessor implements JsonApiPropertyAccessor {
+        private final String name;
+        private final Class<?> type;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        MethodHandleAccessor(final String name, final Class<?> type, final MethodHandle getter, final MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(final Object target) throws ReflectiveOperationException {
+            if (getter == null) {
+                throw new NoSuchMethodException("Property '" + name + "' has no getter method in class '" + type + "'");
+            }
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (final Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        @Override
+        public void set(final Object target, final Object value) throws ReflectiveOperationException {
+            if (setter == null) {
+                throw new NoSuchMethodException("Property '" + name + "' has no setter method in class '" + type + "'");
+            }
+            try {
+                setter.invokeExact(target, value);
+            } catch (final Error e) {
+                throw e;
+            } catch (final Throwable e) {
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    private static final class BeanUtilsAccessor implements JsonApiPropertyAccessor {
+        private final String name;
+
+        BeanUtilsAccessor(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Object get(final Object target) throws ReflectiveOperationException {
+            return PropertyUtils.getProperty(target, name);
+        }
+
+        @Override
+        public void set(final Object target, final Object value) throws ReflectiveOperationException {
+            PropertyUtils.setProperty(target, name, value);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads the value of an attribute. One converter is bound to each attribute when its class is first read, see
+ * {@link JsonApiDeserializer#converters()}.
+ */
+public interface JsonApiAttributeConverter {
+
+    /**
+     * @return the value {@code jp} is at, which may be a scalar, object or array
+     */
+    Object read(JsonParser jp) throws IOException;
+}
@@ -0,0 +1,190 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonParser.NumberType;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Built in {@link JsonApiAttributeConverter} implementations.
+ */
+public final class JsonApiAttributeConverters {
+
+    public static final JsonApiAttributeConverter STRING = jp -> isNull(jp) ? null : readString(jp);
+    public static final JsonApiAttributeConverter LONG = jp -> isNull(jp) ? null : readLong(jp);
+    public static final JsonApiAttributeConverter INTEGER = jp -> isNull(jp) ? null : readInt(jp);
+    public static final JsonApiAttributeConverter DOUBLE = jp -> isNull(jp) ? null : readDouble(jp);
+    public static final JsonApiAttributeConverter BOOLEAN = jp -> isNull(jp) ? null : readBoolean(jp);
+    public static final JsonApiAttributeConverter PRIMITIVE_LONG = jp -> isNull(jp) ? 0L : readLong(jp);
+    public static final JsonApiAttributeConverter PRIMITIVE_INT = jp -> isNull(jp) ? 0 : readInt(jp);
+    public static final JsonApiAttributeConverter PRIMITIVE_DOUBLE = jp -> isNull(jp) ? 0.0 : readDouble(jp);
+    public static final JsonApiAttributeConverter PRIMITIVE_BOOLEAN = jp -> isNull(jp) ? false : readBoolean(jp);
+
+    private static final Map<Class<?>, JsonApiAttributeConverter> DEFAULTS = new HashMap<>();
+
+    static {
+        DEFAULTS.put(String.class, STRING);
+        DEFAULTS.put(Long.class, LONG);
+        DEFAULTS.put(long.class, PRIMITIVE_LONG);
+        DEFAULTS.put(Integer.class, INTEGER);
+        DEFAULTS.put(int.class, PRIMITIVE_INT);
+        DEFAULTS.put(Double.class, DOUBLE);
+        DEFAULTS.put(double.class, PRIMITIVE_DOUBLE);
+        DEFAULTS.put(Boolean.class, BOOLEAN);
+        DEFAULTS.put(boolean.class, PRIMITIVE_BOOLEAN);
+    }
+
+    private JsonApiAttributeConverters() {
+        // Intentionally private
+    }
+
+    private static boolean isNull(final JsonParser jp) {
+        return jp.getCurrentToken() == JsonToken.VALUE_NULL;
+    }
+
+    private static String readString(final JsonParser jp) throws IOException {
+        if (!jp.getCurrentToken().isScalarValue()) {
+            throw invalid(jp, "a string");
+        }
+        return jp.getText();
+    }
+
+    /**
+     * Reads an integer, which may be written as a string, rejecting fractions and values out of range
+     */
+    private static long readLong(final JsonParser jp) throws IOException {
+        try {
+            switch (jp.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                if (jp.getNumberType() == NumberType.BIG_INTEGER) {
+                    throw invalid(jp, "a long");
+                }
+                return jp.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                return jp.getDecimalValue().longValueExact();
+            case VALUE_STRING:
+                return Long.parseLong(jp.getText().trim());
+            default:
+                throw invalid(jp, "a long");
+            }
+        } catch (final ArithmeticException | NumberFormatException e) {
+            throw invalid(jp, "a long");
+        }
+    }
+
+    private static int readInt(final JsonParser jp) throws IOException {
+        try {
+            switch (jp.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                if (jp.getNumberType() != NumberType.INT) {
+                    throw invalid(jp, "an int");
+                }
+                return jp.getIntValue();
+            case VALUE_NUMBER_FLOAT:
+                return jp.getDecimalValue().intValueExact();
+            case VALUE_STRING:
+                return Integer.parseInt(jp.getText().trim());
+            default:
+                throw invalid(jp, "an int");
+            }
+        } catch (final ArithmeticException | NumberFormatException e) {
+            throw invalid(jp, "an int");
+        }
+    }
+
+    private static double readDouble(final JsonParser jp) throws IOException {
+        try {
+            switch (jp.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return jp.getDoubleValue();
+            case VALUE_STRING:
+                return Double.parseDouble(jp.getText().trim());
+            default:
+                throw invalid(jp, "a double");
+            }
+        } catch (final NumberFormatException e) {
+            throw invalid(jp, "a double");
+        }
+    }
+
+    /**
+     * Reads a boolean, which may be written as the string {@code "true"} or {@code "false"}
+     */
+    private static boolean readBoolean(final JsonParser jp) throws IOException {
+        switch (jp.getCurrentToken()) {
+        case VALUE_TRUE:
+            return true;
+        case VALUE_FALSE:
+            return false;
+        case VALUE_STRING:
+            final String text = jp.getText().trim();
+            if ("true".equals(text) || "false".equals(text)) {
+                return Boolean.parseBoolean(text);
+            }
+            throw invalid(jp, "a boolean");
+        default:
+            throw invalid(jp, "a boolean");
+        }
+    }
+
+    private static JsonMappingException invalid(final JsonParser jp, final String type) throws IOException {
+        final JsonToken token = jp.getCurrentToken();
+        final String value = (token == JsonToken.VALUE_STRING) ? ('"' + jp.getText() + '"')
+                : token.isScalarValue() ? jp.getText() : token.asString();
+        return new JsonMappingException("Cannot read " + value + " as " + type, jp.getCurrentLocation());
+    }
+
+    /**
+     * @return a new map of the converters for strings, numbers and booleans read straight from the parser. Numbers
+     *         may be written as strings and integers may not have a fraction, any other token fails with a
+     *         {@link JsonMappingException}. Null is read as null, or as zero or false for primitives
+     */
+    public static Map<Class<?>, JsonApiAttributeConverter> defaults() {
+        return new HashMap<>(DEFAULTS);
+    }
+
+    /**
+     * @return a converter reading values of {@code type} with the deserializer Jackson has for it. The
+     *         {@link JsonApiDeserializer} resolves that deserializer once for the mapper reading the document and
+     *         calls it with the active context, when read on its own a value is read through the parser's
+     *         {@link ObjectCodec}
+     */
+    public static JsonApiAttributeConverter jackson(final Type type) {
+        return new JacksonConverter(type);
+    }
+
+    /**
+     * Converter reading values with the deserializer Jackson has for a type, see {@link #jackson(Type)}
+     */
+    static final class JacksonConverter implements JsonApiAttributeConverter {
+        private final Type type;
+
+        JacksonConverter(final Type type) {
+            this.type = type;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        @Override
+        public Object read(final JsonParser jp) throws IOException {
+            final ObjectCodec codec = jp.getCodec();
+            if (codec == null) {
+                throw new JsonMappingException("No ObjectCodec to read " + type + " with", jp.getCurrentLocation());
+            }
+            final TypeFactory typeFactory = (codec instanceof ObjectMapper) ? ((ObjectMapper) codec).getTypeFactory()
+                    : TypeFactory.defaultInstance();
+            return codec.readValue(jp, typeFactory.constructType(type));
+        }
+    }
+}
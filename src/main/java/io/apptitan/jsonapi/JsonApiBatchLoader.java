@@ -0,0 +1,22 @@
+package io.apptitan.jsonapi;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Loads related resources that have not been loaded yet, such as uninitialized JPA proxies, many at a time before
+ * a compound document is written, see {@link JsonApiResponse.Builder#includeLoader}. An implementation might run
+ * {@code SELECT e FROM Entity e WHERE e.id IN :ids} for each type.
+ */
+@FunctionalInterface
+public interface JsonApiBatchLoader {
+
+    /**
+     * @param type
+     *            the class the resources are mapped as
+     * @param ids
+     *            ids of the resources, as read by the {@link JsonApiIdentifierResolver}
+     * @return the loaded resources by id. A resource left out is written from the object that was reached
+     */
+    Map<?, ?> load(Class<?> type, Set<Object> ids) throws Exception;
+}
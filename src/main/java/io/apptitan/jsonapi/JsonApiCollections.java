@@ -0,0 +1,80 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.stream.BaseStream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Helpers for writing the resources of a collection document one at a time.
+ */
+final class JsonApiCollections {
+
+    /**
+     * Number of resources written between flushes of the generator when none is configured
+     */
+    static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * Number of resources rendered by each task when a collection is written in parallel and no chunk size is
+     * configured
+     */
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private JsonApiCollections() {
+        // Intentionally private
+    }
+
+    /**
+     * @return true if {@code data} holds many resources rather than being a resource itself
+     */
+    static boolean isCollection(final Object data) {
+        return (data instanceof Iterable) || (data instanceof Iterator) || (data instanceof BaseStream)
+                || (data instanceof Object[]);
+    }
+
+    /**
+     * @return true if the resources in {@code data} can be iterated over more than once
+     */
+    static boolean isRepeatable(final Object data) {
+        return !(data instanceof Iterator) && !(data instanceof BaseStream);
+    }
+
+    /**
+     * @return an iterator over the resources in {@code data}, which must be a collection according to
+     *         {@link #isCollection(Object)}
+     */
+    static Iterator<?> iterator(final Object data) {
+        if (data instanceof Iterable) {
+            return ((Iterable<?>) data).iterator();
+        }
+        if (data instanceof Iterator) {
+            return (Iterator<?>) data;
+        }
+        if (data instanceof BaseStream) {
+            return ((BaseStream<?, ?>) data).iterator();
+        }
+        return Arrays.asList((Object[]) data).iterator();
+    }
+
+    /**
+     * Releases whatever backs {@code data} once it has been written, such as the cursor behind a {@link BaseStream}
+     */
+    static void close(final Object data) {
+        if (data instanceof BaseStream) {
+            ((BaseStream<?, ?>) data).close();
+        }
+    }
+
+    /**
+     * Flushes {@code jgen} after every {@code flushInterval} resources, doing nothing if the interval is not
+     * positive
+     */
+    static void flushIfDue(final JsonGenerator jgen, final int written, final int flushInterval) throws IOException {
+        if ((flushInterval > 0) && ((written % flushInterval) == 0)) {
+            jgen.flush();
+        }
+    }
+}
@@ -1,14 +1,16 @@
 package io.apptitan.jsonapi;
 
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
 class JsonApiConstants {
 
 	private JsonApiConstants() {
 		// Intentionally private
 	}
 
-	public static final String ID_FORMAT = "%s/%s/%s";
-	public static final String RELATED_FORMAT = "%s/%s/%s/%s";
-	public static final String RELATIONSHIP_FORMAT = "%s/%s/%s/relationships/%s";
+	public static final String PATH_SEPARATOR = "/";
+	public static final String RELATIONSHIPS_PATH = "/relationships/";
 	public static final String RELATED = "related";
 	public static final String TYPE = "type";
 	public static final String ID = "id";
@@ -18,4 +20,19 @@ class JsonApiConstants {
 	public static final String RELATIONSHIPS = "relationships";
 	public static final String ATTRIBUTES = "attributes";
 	public static final String META = "meta";
+	public static final String INCLUDED = "included";
+	public static final String COUNT = "count";
+	public static final String ATOMIC_OPERATIONS = "atomic:operations";
+
+	// Pre-encoded member names for writing
+	public static final SerializableString RELATED_NAME = new SerializedString(RELATED);
+	public static final SerializableString TYPE_NAME = new SerializedString(TYPE);
+	public static final SerializableString ID_NAME = new SerializedString(ID);
+	public static final SerializableString DATA_NAME = new SerializedString(DATA);
+	public static final SerializableString SELF_NAME = new SerializedString(SELF);
+	public static final SerializableString LINKS_NAME = new SerializedString(LINKS);
+	public static final SerializableString RELATIONSHIPS_NAME = new SerializedString(RELATIONSHIPS);
+	public static final SerializableString ATTRIBUTES_NAME = new SerializedString(ATTRIBUTES);
+	public static final SerializableString META_NAME = new SerializedString(META);
+	public static final SerializableString COUNT_NAME = new SerializedString(COUNT);
 }
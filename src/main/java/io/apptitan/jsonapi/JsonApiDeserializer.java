@@ -1,146 +1,1016 @@
 package io.apptitan.jsonapi;
 
-import java.beans.PropertyDescriptor;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.lang.annotation.Annotation;
-import java.util.Arrays;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
-import javax.persistence.Id;
-
-import org.apache.commons.beanutils.PropertyUtils;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.BeanProperty;
 import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.ContextualDeserializer;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.google.common.base.CaseFormat;
 
+/**
+ * Reads JSON API documents into resources. Contextualizing it for a type returns a deserializer bound to that type
+ * and to the Jackson deserializers the mapper has for its attributes, safe to share between threads, so a single
+ * instance can be registered for any number of resource classes.
+ */
 public class JsonApiDeserializer extends JsonDeserializer<Object> implements ContextualDeserializer {
 
-    private Class<?> targetClass;
+    /**
+     * A property of a resource class together with the converter its values are read with and, once bound to a
+     * mapper, the deserializer of a converter reading through Jackson
+     */
+    private static final class Member {
+        private final JsonApiProperty property;
+        private final JsonApiAttributeConverter converter;
+        private final JsonDeserializer<Object> deserializer;
+
+        Member(final JsonApiProperty property, final JsonApiAttributeConverter converter) {
+            this(property, converter, null);
+        }
+
+        private Member(
+                final JsonApiProperty property,
+                final JsonApiAttributeConverter converter,
+                final JsonDeserializer<Object> deserializer) {
+            this.property = property;
+            this.converter = converter;
+            this.deserializer = deserializer;
+        }
+
+        /**
+         * @return this member with the deserializer {@code ctxt} finds for the type of a
+         *         {@link JsonApiAttributeConverters#jackson(java.lang.reflect.Type)} converter, or this member for any
+         *         other converter or without a context
+         */
+        Member bind(final DeserializationContext ctxt) throws JsonMappingException {
+            if ((ctxt == null) || !(converter instanceof JsonApiAttributeConverters.JacksonConverter)) {
+                return this;
+            }
+            final JavaType type = ctxt.getTypeFactory().constructType(
+                    ((JsonApiAttributeConverters.JacksonConverter) converter).getType());
+            return new Member(property, converter, ctxt.findRootValueDeserializer(type));
+        }
+
+        Object read(final JsonParser jp, final DeserializationContext ctxt) throws IOException {
+            if (deserializer == null) {
+                return converter.read(jp);
+            }
+            return (jp.getCurrentToken() == JsonToken.VALUE_NULL) ? deserializer.getNullValue(ctxt)
+                    : deserializer.deserialize(jp, ctxt);
+        }
+    }
+
+    /**
+     * The members of each class read by one mapper, bound with the context of the first document that reads the
+     * class. Contextualized deserializers are shared between threads, so it is concurrent.
+     */
+    private final class Binding {
+        private final ConcurrentMap<Class<?>, Map<String, Member>> properties = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Class<?>, Member> ids = new ConcurrentHashMap<>();
+
+        Map<String, Member> properties(final Class<?> type, final DeserializationContext ctxt)
+                throws JsonMappingException {
+            Map<String, Member> bound = properties.get(type);
+            if (bound == null) {
+                final Map<String, Member> members = new HashMap<>();
+                for (final Map.Entry<String, Member> member : propertyTables.get(type).entrySet()) {
+                    members.put(member.getKey(), member.getValue().bind(ctxt));
+                }
+                bound = Collections.unmodifiableMap(members);
+                properties.putIfAbsent(type, bound);
+            }
+            return bound;
+        }
+
+        Member id(final Class<?> type, final DeserializationContext ctxt) throws JsonMappingException {
+            Member bound = ids.get(type);
+            if (bound == null) {
+                bound = idMembers.get(type).bind(ctxt);
+                ids.putIfAbsent(type, bound);
+            }
+            return bound;
+        }
+    }
+
+    /**
+     * A document being read: the context its values are read with, null when it is not read by an
+     * {@link ObjectMapper}, the members bound for its mapper and the compound document its included resources are
+     * linked in, null unless {@link #linkIncluded()}
+     */
+    private static final class Document {
+        private final DeserializationContext ctxt;
+        private final Binding binding;
+        private final Compound compound;
+
+        Document(final DeserializationContext ctxt, final Binding binding, final Compound compound) {
+            this.ctxt = ctxt;
+            this.binding = binding;
+            this.compound = compound;
+        }
+    }
+
+    /**
+     * Deserializer of a single resource class, whose members are bound when it is contextualized
+     */
+    private static final class ResourceDeserializer extends JsonDeserializer<Object> implements ContextualDeserializer {
+        private final JsonApiDeserializer owner;
+        private final Class<?> type;
+        private final Binding binding;
+
+        ResourceDeserializer(final JsonApiDeserializer owner, final Class<?> type, final Binding binding) {
+            this.owner = owner;
+            this.type = type;
+            this.binding = binding;
+        }
+
+        @Override
+        public JsonDeserializer<?> createContextual(final DeserializationContext ctxt, final BeanProperty property)
+                throws JsonMappingException {
+            if (binding != null) {
+                return this;
+            }
+            final Binding bound = owner.new Binding();
+            bound.properties(type, ctxt);
+            return new ResourceDeserializer(owner, type, bound);
+        }
+
+        @Override
+        public Object deserialize(final JsonParser jp, final DeserializationContext ctxt) throws IOException,
+                JsonProcessingException {
+            return owner.readDocument(jp, ctxt, type, (binding != null) ? binding : owner.new Binding());
+        }
+
+        @Override
+        public Class<?> handledType() {
+            return type;
+        }
+    }
+
+    /**
+     * Resources of a document read by {@link JsonApiDeserializer#readAll(JsonParser, Class, Executor)}, in document
+     * order
+     */
+    private final class Batch<T> {
+        private final Class<T> type;
+        private final Executor executor;
+        private final Document document;
+        private final ObjectMapper mapper;
+        private final List<T> resources = new ArrayList<>();
+        private final List<CompletableFuture<List<T>>> pending = new ArrayList<>();
+        private TokenBuffer buffer;
+        private int buffered;
+
+        Batch(final Class<T> type, final Executor executor, final Document document, final ObjectMapper mapper) {
+            this.type = type;
+            this.executor = executor;
+            this.document = document;
+            this.mapper = mapper;
+        }
+
+        /**
+         * Reads the resource object {@code jp} is at, or buffers it to be read on the executor
+         */
+        void add(final JsonParser jp) throws IOException {
+            if (executor == null) {
+                resources.add(readResource(jp, type, document));
+                return;
+            }
+            if (buffer == null) {
+                buffer = new TokenBuffer(jp);
+            }
+            buffer.copyCurrentStructure(jp);
+            if (++buffered == MATERIALIZE_BATCH_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            final TokenBuffer tokens = buffer;
+            final int count = buffered;
+            buffer = null;
+            buffered = 0;
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                final List<T> materialized = new ArrayList<>(count);
+                try (JsonParser jp = tokens.asParser()) {
+                    // Contexts are not thread safe, so each batch is read with its own
+                    final Document task = new Document(context(mapper, jp), document.binding, document.compound);
+                    while (jp.nextToken() == JsonToken.START_OBJECT) {
+                        materialized.add(readResource(jp, type, task));
+                    }
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return materialized;
+            }, executor));
+        }
+
+        /**
+         * Keeps the batches that have not been materialized yet from being started, as the document has failed
+         */
+        void cancel() {
+            for (final CompletableFuture<List<T>> materialized : pending) {
+                materialized.cancel(false);
+            }
+        }
+
+        List<T> finish() throws IOException {
+            if (buffered > 0) {
+                submit();
+            }
+            try {
+                for (final CompletableFuture<List<T>> materialized : pending) {
+                    resources.addAll(materialized.join());
+                }
+            } catch (final CompletionException e) {
+                cancel();
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            return resources;
+        }
+    }
+
+    /**
+     * The resource linkage of one relationship, read as stubs and set to the included resources it identifies once
+     * the whole document has been read
+     */
+    private static final class Linkage {
+        private final Object target;
+        private final JsonApiProperty property;
+        private final Class<?> type;
+        private final Collection<Object> related;
+        private final List<JsonApiResourceKey> keys = new ArrayList<>(1);
+        private final List<Object> stubs = new ArrayList<>(1);
+
+        /**
+         * @param related
+         *            the collection a to-many relationship is set to, null for a to-one relationship
+         */
+        Linkage(final Object target, final JsonApiProperty property, final Class<?> type,
+                final Collection<Object> related) {
+            this.target = target;
+            this.property = property;
+            this.type = type;
+            this.related = related;
+        }
+    }
+
+    /**
+     * The resources of a compound document keyed by type and id, primary and included alike, and the relationships
+     * to link to them. Resources materialized on an executor share it, so it is synchronized.
+     */
+    private final class Compound {
+        private final JsonApiTypeRegistry types;
+        private final Map<JsonApiResourceKey, Object> resources = new HashMap<>();
+        private final Map<JsonApiResourceKey, Object> stubs = new HashMap<>();
+        private final List<Linkage> linkages = new ArrayList<>();
+
+        Compound(final JsonApiTypeRegistry types) {
+            this.types = types;
+        }
+
+        /**
+         * Reads each resource of the {@code included} array {@code jp} is at into a new instance of the class its
+         * type is registered for, skipping resources of other types
+         */
+        void readIncluded(final JsonParser jp, final Document document) throws IOException {
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (token != JsonToken.START_OBJECT) {
+                    jp.skipChildren();
+                    continue;
+                }
+                // The type may follow the attributes, so the resource is buffered to find it out first
+                final TokenBuffer buffer = new TokenBuffer(jp);
+                buffer.copyCurrentStructure(jp);
+                final Class<?> type = types.get(typeOf(buffer));
+                if (type != null) {
+                    try (JsonParser resource = buffer.asParser()) {
+                        resource.nextToken();
+                        readResource(resource, type, document);
+                    }
+                }
+            }
+        }
+
+        private String typeOf(final TokenBuffer buffer) throws IOException {
+            try (JsonParser resource = buffer.asParser()) {
+                resource.nextToken();
+                for (JsonToken token = resource.nextToken(); token == JsonToken.FIELD_NAME;
+                        token = resource.nextToken()) {
+                    final String name = resource.getCurrentName();
+                    resource.nextToken();
+                    if (JsonApiConstants.TYPE.equals(name)) {
+                        return scalarText(resource);
+                    }
+                    resource.skipChildren();
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Indexes {@code resource} unless a resource with the same type and id has been read already
+         */
+        synchronized void add(final JsonApiResourceKey key, final Object resource) {
+            resources.putIfAbsent(key, resource);
+        }
+
+        synchronized void add(final Linkage linkage) {
+            linkages.add(linkage);
+        }
+
+        /**
+         * @return the one stub of {@code type} standing in for the resource identified by {@code key}
+         */
+        synchronized Object stub(final JsonApiResourceKey key, final Class<?> type, final Object id)
+                throws ReflectiveOperationException {
+            Object stub = stubs.get(key);
+            if ((stub == null) || !type.isInstance(stub)) {
+                stub = stubFactory().stub(type, id);
+                stubs.put(key, stub);
+            }
+            return stub;
+        }
+
+        /**
+         * Sets every relationship to the resources read with the type and id it identifies, leaving the stubs of
+         * those that are not in the document
+         */
+        void link() {
+            try {
+                for (final Linkage linkage : linkages) {
+                    if (linkage.related == null) {
+                        final Object resource = resources.get(linkage.keys.get(0));
+                        if (linkage.type.isInstance(resource)) {
+                            linkage.property.set(linkage.target, resource);
+                        }
+                        continue;
+                    }
+                    linkage.related.clear();
+                    for (int i = 0; i < linkage.keys.size(); i++) {
+                        final Object resource = resources.get(linkage.keys.get(i));
+                        linkage.related.add(linkage.type.isInstance(resource) ? resource : linkage.stubs.get(i));
+                    }
+                }
+            } catch (final ReflectiveOperationException e) {
+                throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR,
+                        "Could not link the included resources", e);
+            }
+        }
+    }
+
+    /**
+     * Number of resources materialized by each task submitted to the executor given to
+     * {@link #readAll(JsonParser, Class, Executor)}
+     */
+    private static final int MATERIALIZE_BATCH_SIZE = 256;
+
+    private volatile JsonApiRelationshipCache relationshipCache;
+
+    /**
+     * Properties of each class keyed by their member name in {@link #pathFormat()}, with their converters bound
+     */
+    private final ClassValue<Map<String, Member>> propertyTables = new ClassValue<Map<String, Member>>() {
+        @Override
+        protected Map<String, Member> computeValue(final Class<?> type) {
+            final long start = System.nanoTime();
+            final Map<Class<?>, JsonApiAttributeConverter> converters = converters();
+            final Map<String, Member> properties = new HashMap<>();
+            for (final JsonApiProperty property : relationshipCache().get(type).getProperties()) {
+                JsonApiAttributeConverter converter = converters.get(property.getType());
+                if (converter == null) {
+                    converter = JsonApiAttributeConverters.jackson(property.getGenericType());
+                }
+                properties.put(CaseFormat.LOWER_CAMEL.to(pathFormat(), property.getName()),
+                        new Member(property, converter));
+            }
+            listener().metadataBuilt(type, System.nanoTime() - start);
+            return Collections.unmodifiableMap(properties);
+        }
+    };
+
+    /**
+     * Id property of each class with the converter of its declared type, a string without property for enums and
+     * classes without id
+     */
+    private final ClassValue<Member> idMembers = new ClassValue<Member>() {
+        @Override
+        protected Member computeValue(final Class<?> type) {
+            final JsonApiProperty idAttribute = type.isEnum() ? null : relationshipCache().get(type).getIdAttribute();
+            if (idAttribute == null) {
+                return new Member(null, JsonApiAttributeConverters.STRING);
+            }
+            final JsonApiAttributeConverter converter = converters().get(idAttribute.getType());
+            return new Member(idAttribute, (converter != null) ? converter
+                    : JsonApiAttributeConverters.jackson(idAttribute.getGenericType()));
+        }
+    };
+
+    /**
+     * Creates enum constants by name and any other resource as a new instance with only its id set
+     */
+    private final JsonApiStubFactory instantiatingStubFactory = new JsonApiStubFactory() {
+        @Override
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        public Object stub(final Class<?> type, final Object id) throws ReflectiveOperationException {
+            if (type.isEnum()) {
+                return Enum.valueOf((Class<? extends Enum>) type, (String) id);
+            }
+            final Object stub = type.newInstance();
+            final JsonApiProperty idAttribute = relationshipCache().get(type).getIdAttribute();
+            if (idAttribute != null) {
+                idAttribute.set(stub, id);
+            }
+            return stub;
+        }
+    };
+
+    /**
+     * Classes of the resources that may be included in documents whose primary data is of each class
+     */
+    private final ClassValue<JsonApiTypeRegistry> typeRegistries = new ClassValue<JsonApiTypeRegistry>() {
+        @Override
+        protected JsonApiTypeRegistry computeValue(final Class<?> type) {
+            return new JsonApiTypeRegistry(type, relationshipCache(), pathFormat());
+        }
+    };
+
+    private final ClassValue<JsonDeserializer<Object>> resourceDeserializers = new ClassValue<JsonDeserializer<Object>>() {
+        @Override
+        protected JsonDeserializer<Object> computeValue(final Class<?> type) {
+            return new ResourceDeserializer(JsonApiDeserializer.this, type, null);
+        }
+    };
 
     @Override
     public JsonDeserializer<?> createContextual(final DeserializationContext ctxt, final BeanProperty property)
             throws JsonMappingException {
-        targetClass = ctxt.getContextualType().getRawClass();
-        return this;
+        return ((ContextualDeserializer) forType(ctxt.getContextualType().getRawClass())).createContextual(ctxt,
+                property);
+    }
+
+    /**
+     * @return the deserializer of resources of {@code type}, which binds the Jackson deserializers of its attributes
+     *         once it is contextualized by a mapper
+     */
+    public JsonDeserializer<Object> forType(final Class<?> type) {
+        return resourceDeserializers.get(type);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Object deserialize(final JsonParser jp, final DeserializationContext ctxt) throws IOException, JsonProcessingException {
-        try {
-            final Object target = targetClass.newInstance();
-
-            final JsonNode node = jp.getCodec().readTree(jp);
-            final ObjectNode data = (ObjectNode) node.get(JsonApiConstants.DATA);
-            final ObjectNode attributes = (ObjectNode) data.get(JsonApiConstants.ATTRIBUTES);
-            if (attributes != null) {
-                attributes.fields().forEachRemaining(entry -> {
-                    final String propertyName = CaseFormat.LOWER_HYPHEN.to(CaseFormat.LOWER_CAMEL, entry.getKey());
-                    try {
-                        final PropertyDescriptor descriptor = PropertyUtils.getPropertyDescriptor(target, propertyName);
-                        final Object value = parseValue(descriptor.getPropertyType(), entry.getValue());
-                        PropertyUtils.setProperty(target, propertyName, value);
-                    } catch (final Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+        throw ctxt.mappingException("JsonApiDeserializer has to be contextualized with the type of resource to read");
+    }
+
+    private Object readDocument(
+            final JsonParser jp,
+            final DeserializationContext ctxt,
+            final Class<?> type,
+            final Binding binding) throws IOException {
+        final JsonApiListener listener = listener();
+        final long start = (listener != JsonApiListener.NONE) ? System.nanoTime() : 0;
+        final Compound compound = linkIncluded() ? new Compound(typeRegistries.get(type)) : null;
+        final Document document = new Document(ctxt, binding, compound);
+        Object target = null;
+        JsonToken data = null;
+
+        // Top level members may arrive in any order, only data and included are read
+        JsonToken token = startObject(jp);
+        final JsonStreamContext top = jp.getParsingContext();
+        for (; token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String name = jp.getCurrentName();
+            final JsonToken value = jp.nextToken();
+            if (JsonApiConstants.DATA.equals(name)) {
+                data = value;
+                if (value == JsonToken.START_OBJECT) {
+                    target = readResource(jp, type, document);
+                } else if (value != JsonToken.VALUE_NULL) {
+                    memberFailed("Invalid document", top, name, new JsonMappingException(
+                            "Data must be a resource object or null", jp.getCurrentLocation()));
+                    jp.skipChildren();
+                }
+            } else if ((compound != null) && JsonApiConstants.INCLUDED.equals(name)
+                    && (value == JsonToken.START_ARRAY)) {
+                compound.readIncluded(jp, document);
+            } else {
+                jp.skipChildren();
             }
+        }
+        if (data == null) {
+            memberFailed("Invalid document", top, JsonApiConstants.DATA,
+                    new JsonMappingException("Missing data", jp.getCurrentLocation()));
+        }
+        if (compound != null) {
+            compound.link();
+        }
 
-            final ObjectNode relationships = (ObjectNode) data.get(JsonApiConstants.RELATIONSHIPS);
-            if (relationships != null) {
-                relationships.fields().forEachRemaining(entry -> {
-                    try {
-                        final String propertyName = CaseFormat.LOWER_HYPHEN.to(CaseFormat.LOWER_CAMEL, entry.getKey());
-                        final PropertyDescriptor descriptor = PropertyUtils.getPropertyDescriptor(target, propertyName);
-                        final JsonNode idNode = entry.getValue().get(JsonApiConstants.DATA).get(JsonApiConstants.ID);
-
-                        if (descriptor.getPropertyType().isEnum()) {
-                            final Class<? extends Enum> enumClass = (Class<? extends Enum>) descriptor.getPropertyType();
-                            final Enum<?> enumValue = Enum.valueOf(enumClass, idNode.asText());
-                            PropertyUtils.setProperty(target, propertyName, enumValue);
+        if (listener != JsonApiListener.NONE) {
+            listener.documentRead(type, (target != null) ? 1 : 0, System.nanoTime() - start);
+        }
+        return target;
+    }
+
+    private static <T> T instantiate(final Class<T> type) {
+        try {
+            return type.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR,
+                    "Could not create an instance of " + type.getName(), e);
+        }
+    }
+
+    /**
+     * @return every resource in a document whose {@code data} is a resource object or an array of them, or in the
+     *         {@code data} of each operation of an atomic operations document, in document order
+     */
+    public <T> List<T> readAll(final JsonParser jp, final Class<T> type) throws IOException {
+        return readAll(jp, type, null);
+    }
+
+    /**
+     * Reads every resource as {@link #readAll(JsonParser, Class)} does. Parsing is sequential but, when
+     * {@code executor} is not null, resources are buffered in batches that are materialized on the executor. When
+     * the codec of {@code jp} is an {@link ObjectMapper} attributes are read with the deserializers it has for their
+     * types, which are resolved once for the document.
+     */
+    public <T> List<T> readAll(final JsonParser jp, final Class<T> type, final Executor executor) throws IOException {
+        final JsonApiListener listener = listener();
+        final long start = (listener != JsonApiListener.NONE) ? System.nanoTime() : 0;
+        final ObjectMapper mapper = (jp.getCodec() instanceof ObjectMapper) ? (ObjectMapper) jp.getCodec() : null;
+        final Compound compound = linkIncluded() ? new Compound(typeRegistries.get(type)) : null;
+        final Document document = new Document(context(mapper, jp), new Binding(), compound);
+        final Batch<T> batch = new Batch<>(type, executor, document, mapper);
+        try {
+            readAllMembers(jp, batch, document);
+        } catch (final IOException | RuntimeException e) {
+            batch.cancel();
+            throw e;
+        }
+        final List<T> resources = batch.finish();
+        if (compound != null) {
+            compound.link();
+        }
+        if (listener != JsonApiListener.NONE) {
+            listener.documentRead(type, resources.size(), System.nanoTime() - start);
+        }
+        return resources;
+    }
+
+    /**
+     * @return a new context reading the document {@code jp} is at, as {@code mapper} creates for each document it
+     *         reads, or null without a mapper
+     */
+    private static DeserializationContext context(final ObjectMapper mapper, final JsonParser jp) {
+        if (mapper == null) {
+            return null;
+        }
+        return ((DefaultDeserializationContext) mapper.getDeserializationContext()).createInstance(
+                mapper.getDeserializationConfig(), jp, mapper.getInjectableValues());
+    }
+
+    /**
+     * Reads the top level members of a document, adding its resources to {@code batch}
+     */
+    private static void readAllMembers(final JsonParser jp, final Batch<?> batch, final Document document)
+            throws IOException {
+        for (JsonToken token = startObject(jp); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String name = jp.getCurrentName();
+            final JsonToken value = jp.nextToken();
+            if (JsonApiConstants.DATA.equals(name)) {
+                readResources(jp, batch);
+            } else if (JsonApiConstants.ATOMIC_OPERATIONS.equals(name) && (value == JsonToken.START_ARRAY)) {
+                for (JsonToken operation = jp.nextToken(); operation != JsonToken.END_ARRAY; operation = jp.nextToken()) {
+                    if (operation != JsonToken.START_OBJECT) {
+                        jp.skipChildren();
+                        continue;
+                    }
+                    // Only the data of an operation is read, op, ref and meta are skipped
+                    for (JsonToken member = jp.nextToken(); member == JsonToken.FIELD_NAME; member = jp.nextToken()) {
+                        final String memberName = jp.getCurrentName();
+                        jp.nextToken();
+                        if (JsonApiConstants.DATA.equals(memberName)) {
+                            readResources(jp, batch);
                         } else {
-                            final Object relationshipInstance = descriptor.getPropertyType().newInstance();
-                            final JsonApiRelationshipMap relationshipMap =
-                                    new JsonApiRelationshipMap(relationshipInstance, idAnnotations(), Collections.emptyList(),
-                                            Collections.emptyList());
-                            // final Object idValue =
-                            // parseValue(relationshipMap.getIdAttribute().getType(),
-                            // idNode);
-                            //
-                            // final Type gType =
-                            // relationshipMap.getIdAttribute().getGenericType();
-                            // if (gType instanceof ParameterizedType) {
-                            // final ParameterizedType pType = (ParameterizedType)
-                            // gType;
-                            // System.out.print("Raw type: " + pType.getRawType() +
-                            // " - ");
-                            // System.out.println("Type args: " +
-                            // pType.getActualTypeArguments()[0]);
-                            // } else {
-                            // System.out.println("Type: " +
-                            // relationshipMap.getIdAttribute().getType());
-                            // }
-
-                            Object idValue = null;
-                        try {
-                            idValue = Long.valueOf(idNode.textValue());
-                        } catch (final Exception e) {
-                            idValue = idNode.textValue();
+                            jp.skipChildren();
                         }
+                    }
+                }
+            } else if ((document.compound != null) && JsonApiConstants.INCLUDED.equals(name)
+                    && (value == JsonToken.START_ARRAY)) {
+                document.compound.readIncluded(jp, document);
+            } else {
+                jp.skipChildren();
+            }
+        }
+    }
+
+    private static void readResources(final JsonParser jp, final Batch<?> batch) throws IOException {
+        if (jp.getCurrentToken() == JsonToken.START_OBJECT) {
+            batch.add(jp);
+        } else if (jp.getCurrentToken() == JsonToken.START_ARRAY) {
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (token == JsonToken.START_OBJECT) {
+                    batch.add(jp);
+                } else {
+                    jp.skipChildren();
+                }
+            }
+        } else {
+            jp.skipChildren();
+        }
+    }
+
+    /**
+     * Reads the resource object {@code jp} is at into a new instance of {@code type}, indexing it in the compound
+     * document unless there is none
+     */
+    private <T> T readResource(final JsonParser jp, final Class<T> type, final Document document) throws IOException {
+        final JsonApiListener listener = listener();
+        final long start = (listener != JsonApiListener.NONE) ? System.nanoTime() : 0;
+        final T target = instantiate(type);
+        readData(jp, target, document.binding.properties(type, document.ctxt), document);
+        if (listener != JsonApiListener.NONE) {
+            listener.resourceRead(type, System.nanoTime() - start);
+        }
+        return target;
+    }
+
+    /**
+     * Moves past the start of an object, returning the first token inside it
+     */
+    private static JsonToken startObject(final JsonParser jp) throws IOException {
+        JsonToken token = jp.getCurrentToken();
+        if (token == null) {
+            token = jp.nextToken();
+        }
+        if (token == JsonToken.START_OBJECT) {
+            token = jp.nextToken();
+        }
+        return token;
+    }
+
+    private void readData(
+            final JsonParser jp,
+            final Object target,
+            final Map<String, Member> properties,
+            final Document document) throws IOException {
+        final Compound compound = document.compound;
+        final JsonStreamContext resource = jp.getParsingContext();
+        String type = null;
+        String id = null;
+        for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String name = jp.getCurrentName();
+            final JsonToken value = jp.nextToken();
+            if (JsonApiConstants.ATTRIBUTES.equals(name) && (value == JsonToken.START_OBJECT)) {
+                readAttributes(jp, target, properties, document.ctxt);
+            } else if (JsonApiConstants.RELATIONSHIPS.equals(name) && (value == JsonToken.START_OBJECT)) {
+                readRelationships(jp, target, properties, document);
+            } else if ((compound != null) && JsonApiConstants.TYPE.equals(name)) {
+                type = scalarText(jp);
+            } else if ((compound != null) && JsonApiConstants.ID.equals(name)) {
+                // Resources of a compound document are identified by their id, so it is kept
+                id = scalarText(jp);
+                readId(jp, target, resource, document);
+            } else {
+                jp.skipChildren();
+            }
+        }
+        if ((type != null) && (id != null)) {
+            compound.add(new JsonApiResourceKey(type, id), target);
+        }
+    }
+
+    private void readId(
+            final JsonParser jp,
+            final Object target,
+            final JsonStreamContext resource,
+            final Document document) throws IOException {
+        final Member idMember = document.binding.id(target.getClass(), document.ctxt);
+        if (idMember.property != null) {
+            try {
+                idMember.property.set(target, idMember.read(jp, document.ctxt));
+            } catch (final JsonApiException e) {
+                throw e;
+            } catch (final Exception e) {
+                memberFailed("Invalid id", resource, JsonApiConstants.ID, e);
+                skipFailedValue(jp, resource);
+            }
+        }
+        jp.skipChildren();
+    }
+
+    /**
+     * @return the text of the string or number {@code jp} is at, or null for any other value
+     */
+    private static String scalarText(final JsonParser jp) throws IOException {
+        final JsonToken token = jp.getCurrentToken();
+        return (token.isScalarValue() && (token != JsonToken.VALUE_NULL)) ? jp.getText() : null;
+    }
+
+    private void readAttributes(
+            final JsonParser jp,
+            final Object target,
+            final Map<String, Member> properties,
+            final DeserializationContext ctxt) throws IOException {
+        final JsonStreamContext attributes = jp.getParsingContext();
+        for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String name = jp.getCurrentName();
+            final Member member = properties.get(name);
+            jp.nextToken();
+            if (member == null) {
+                jp.skipChildren();
+                continue;
+            }
+            try {
+                member.property.set(target, member.read(jp, ctxt));
+            } catch (final JsonApiException e) {
+                throw e;
+            } catch (final Exception e) {
+                memberFailed("Invalid attribute", attributes, name, e);
+                skipFailedValue(jp, attributes);
+            }
+            jp.skipChildren();
+        }
+    }
 
-                        PropertyUtils.setProperty(relationshipInstance, relationshipMap.getIdAttribute().getName(),
-                                idValue);
-                        PropertyUtils.setProperty(target, propertyName, relationshipInstance);
+    private void readRelationships(
+            final JsonParser jp,
+            final Object target,
+            final Map<String, Member> properties,
+            final Document document) throws IOException {
+        final JsonStreamContext relationships = jp.getParsingContext();
+        for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String relationshipName = jp.getCurrentName();
+            final Member relationship = properties.get(relationshipName);
+            if ((jp.nextToken() != JsonToken.START_OBJECT) || (relationship == null)) {
+                jp.skipChildren();
+                continue;
+            }
+
+            // Only resource linkage is read, links and meta are skipped
+            for (JsonToken member = jp.nextToken(); member == JsonToken.FIELD_NAME; member = jp.nextToken()) {
+                final JsonStreamContext relationshipObject = jp.getParsingContext();
+                final String name = jp.getCurrentName();
+                final JsonToken value = jp.nextToken();
+                if (JsonApiConstants.DATA.equals(name)
+                        && ((value == JsonToken.START_OBJECT) || (value == JsonToken.START_ARRAY))) {
+                    try {
+                        readLinkage(jp, target, relationship.property, document);
+                    } catch (final JsonApiException e) {
+                        throw e;
+                    } catch (final Exception e) {
+                        memberFailed("Invalid relationship", relationships, relationshipName, e);
+                        skipFailedValue(jp, relationshipObject);
                     }
-                } catch (final Exception e) {
-                    e.printStackTrace();
+                } else {
+                    jp.skipChildren();
                 }
-            }   );
             }
+        }
+    }
 
-            return target;
-        } catch (InstantiationException | IllegalAccessException e1) {
-            e1.printStackTrace();
-            return null;
+    /**
+     * Fails the document with a {@link JsonApiException} pointing at {@code member} of the object read in
+     * {@code container}, or skips the member if {@link #errorPolicy()} is lenient
+     */
+    private void memberFailed(
+            final String title,
+            final JsonStreamContext container,
+            final String member,
+            final Exception cause) {
+        final JsonApiException exception = JsonApiErrors.memberError(JsonApiErrors.BAD_REQUEST, title, container,
+                member, cause);
+        if (errorPolicy() == JsonApiErrorPolicy.STRICT) {
+            throw exception;
         }
+        memberSkipped(exception);
     }
 
-    protected List<Class<? extends Annotation>> idAnnotations() {
-        return Arrays.asList(JsonApiId.class, Id.class);
+    /**
+     * Moves to the end of a member of {@code container} whose value failed part way through, so that a lenient read
+     * carries on with the next member
+     */
+    private static void skipFailedValue(final JsonParser jp, final JsonStreamContext container) throws IOException {
+        while ((jp.getParsingContext() != container) && (jp.nextToken() != null)) {
+            // Each token left in the value is skipped
+        }
     }
 
-    private Object parseValue(final Class<?> clazz, final JsonNode value) {
-        Object result = null;
+    /**
+     * Sets {@code property} to the stub of the resource identifier object {@code jp} is at, recording the linkage in
+     * the compound document unless there is none. Within a compound document it is set to a new collection of the
+     * stubs of an array of them, unless its declared type is not a collection that can be created, in which case
+     * the array is skipped as it is outside of compound documents.
+     */
+    private void readLinkage(
+            final JsonParser jp,
+            final Object target,
+            final JsonApiProperty property,
+            final Document document) throws IOException, ReflectiveOperationException {
+        final Compound compound = document.compound;
+        if (jp.getCurrentToken() == JsonToken.START_OBJECT) {
+            final Linkage linkage = (compound != null) ? new Linkage(target, property, property.getType(), null) : null;
+            property.set(target, readResourceIdentifier(jp, property.getType(), document, linkage));
+            if ((linkage != null) && (linkage.keys.get(0) != null)) {
+                compound.add(linkage);
+            }
+            return;
+        }
+
+        final Collection<Object> related = (compound != null) ? newCollection(property.getType()) : null;
+        if (related == null) {
+            jp.skipChildren();
+            return;
+        }
+        final Class<?> type = JsonApiResourceTemplate.elementType(property);
+        final Linkage linkage = new Linkage(target, property, type, related);
+        for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+            if (token == JsonToken.START_OBJECT) {
+                related.add(readResourceIdentifier(jp, type, document, linkage));
+            } else {
+                jp.skipChildren();
+            }
+        }
+        property.set(target, related);
+        compound.add(linkage);
+    }
 
-        if (clazz == String.class) {
-            result = value.asText();
+    /**
+     * @return a new empty collection of {@code type}, or of a class assignable to it when it is an interface or
+     *         abstract, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(final Class<?> type) {
+        if (Collection.class.isAssignableFrom(type) && !type.isInterface()
+                && !Modifier.isAbstract(type.getModifiers())) {
+            try {
+                return (Collection<Object>) type.newInstance();
+            } catch (final ReflectiveOperationException e) {
+                return null;
+            }
         }
-        if ((clazz == Long.class) || (clazz == long.class)) {
-            result = value.asLong();
+        if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
         }
-        if ((clazz == Double.class) || (clazz == double.class)) {
-            result = value.asDouble();
+        if (type.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>();
         }
-        if ((clazz == Integer.class) || (clazz == int.class)) {
-            result = value.asInt();
+        if (type.isAssignableFrom(TreeSet.class)) {
+            return new TreeSet<>();
         }
-        if (clazz == Date.class) {
-            result = new Date(value.asInt());
+        return null;
+    }
+
+    /**
+     * Reads a resource identifier object, whose type and id may be in either order, into a stub of {@code type}.
+     * Within a compound document every identifier of the same resource is read into the same stub. An id that is
+     * not valid for the id type of {@code type} fails the whole relationship rather than being read as a default.
+     */
+    private Object readResourceIdentifier(
+            final JsonParser jp,
+            final Class<?> type,
+            final Document document,
+            final Linkage linkage) throws IOException, ReflectiveOperationException {
+        final Compound compound = document.compound;
+        final Member idMember = document.binding.id(type, document.ctxt);
+        String typeName = null;
+        String idText = null;
+        Object id = null;
+        for (JsonToken token = jp.nextToken(); token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            final String name = jp.getCurrentName();
+            jp.nextToken();
+            if (JsonApiConstants.ID.equals(name)) {
+                idText = scalarText(jp);
+                id = idMember.read(jp, document.ctxt);
+            } else if (JsonApiConstants.TYPE.equals(name)) {
+                typeName = scalarText(jp);
+            }
+            jp.skipChildren();
         }
-        if (clazz == Boolean.class) {
-            result = value.asBoolean();
+        if (compound == null) {
+            return stubFactory().stub(type, id);
         }
-        return result;
+        final JsonApiResourceKey key = ((typeName != null) && (idText != null))
+                ? new JsonApiResourceKey(typeName, idText) : null;
+        final Object stub = (key != null) ? compound.stub(key, type, id) : stubFactory().stub(type, id);
+        linkage.keys.add(key);
+        linkage.stubs.add(stub);
+        return stub;
+    }
+
+    protected List<Class<? extends Annotation>> belongsToAnnotations() {
+        return JsonApiRelationshipMap.BELONGS_TO_ANNOTATIONS;
+    }
+
+    protected List<Class<? extends Annotation>> hasManyAnnotations() {
+        return JsonApiRelationshipMap.HAS_MANY_ANNOTATIONS;
+    }
+
+    protected List<Class<? extends Annotation>> idAnnotations() {
+        return JsonApiRelationshipMap.ID_ANNOTATIONS;
+    }
+
+    /**
+     * @return strategy used to write resource properties. Defaults to {@link JsonApiAccessors#METHOD_HANDLES}
+     */
+    protected JsonApiAccessorStrategy accessorStrategy() {
+        return JsonApiAccessors.METHOD_HANDLES;
+    }
+
+    /**
+     * @return factory of the objects relationships are set to. Defaults to creating a new instance with only its id
+     *         set, or looking up the constant of an enum
+     */
+    protected JsonApiStubFactory stubFactory() {
+        return instantiatingStubFactory;
     }
 
+    /**
+     * @return what happens when an attribute or relationship cannot be read. Defaults to
+     *         {@link JsonApiErrorPolicy#STRICT}
+     */
+    protected JsonApiErrorPolicy errorPolicy() {
+        return JsonApiErrorPolicy.STRICT;
+    }
+
+    /**
+     * Called with the member left out of a resource when {@link #errorPolicy()} is
+     * {@link JsonApiErrorPolicy#LENIENT}. Does nothing by default
+     */
+    protected void memberSkipped(final JsonApiException exception) {
+        // Nothing to do
+    }
+
+    /**
+     * @return true to read the {@code included} resources of compound documents, whose classes are found by type
+     *         among the classes reachable through the relationships of the class read, and set relationships to
+     *         them instead of to stubs. Every relationship to the same type and id is set to the same instance,
+     *         whether it is included or a stub. Defaults to false, included resources being skipped
+     */
+    protected boolean linkIncluded() {
+        return false;
+    }
+
+    /**
+     * @return listener measuring the documents and resources read. Defaults to {@link JsonApiListener#NONE}
+     */
+    protected JsonApiListener listener() {
+        return JsonApiListener.NONE;
+    }
+
+    /**
+     * @return converters of attribute types, attributes of any other type are read by the deserializer Jackson has
+     *         for their declared type. Defaults to {@link JsonApiAttributeConverters#defaults()}
+     */
+    protected Map<Class<?>, JsonApiAttributeConverter> converters() {
+        return JsonApiAttributeConverters.defaults();
+    }
+
+    /**
+     * @return format of attribute and relationship names in documents. Defaults to
+     *         {@link CaseFormat#LOWER_HYPHEN}
+     */
+    protected CaseFormat pathFormat() {
+        return CaseFormat.LOWER_HYPHEN;
+    }
+
+    private JsonApiRelationshipCache relationshipCache() {
+        JsonApiRelationshipCache cache = relationshipCache;
+        if (cache == null) {
+            cache = JsonApiRelationshipCache.of(idAnnotations(), belongsToAnnotations(), hasManyAnnotations(),
+                    accessorStrategy());
+            relationshipCache = cache;
+        }
+        return cache;
+    }
 }
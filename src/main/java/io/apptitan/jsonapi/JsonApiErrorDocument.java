@@ -0,0 +1,30 @@
+package io.apptitan.jsonapi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * A document holding {@code errors} rather than data, written by {@link JsonApiErrorDocumentSerializer}.
+ */
+@JsonSerialize(using = JsonApiErrorDocumentSerializer.class)
+public final class JsonApiErrorDocument {
+
+    private final List<JsonApiException> errors;
+
+    public JsonApiErrorDocument(final JsonApiException... errors) {
+        this(Arrays.asList(errors));
+    }
+
+    public JsonApiErrorDocument(final Collection<? extends JsonApiException> errors) {
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    public List<JsonApiException> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,53 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a {@link JsonApiErrorDocument} as an {@code errors} document, leaving out members of an error that are not
+ * set.
+ */
+public final class JsonApiErrorDocumentSerializer extends JsonSerializer<JsonApiErrorDocument> {
+
+    private static final String ERRORS = "errors";
+    private static final String STATUS = "status";
+    private static final String CODE = "code";
+    private static final String TITLE = "title";
+    private static final String DETAIL = "detail";
+    private static final String SOURCE = "source";
+    private static final String POINTER = "pointer";
+
+    @Override
+    public void serialize(
+            final JsonApiErrorDocument document,
+            final JsonGenerator jgen,
+            final SerializerProvider provider) throws IOException, JsonProcessingException {
+        jgen.writeStartObject();
+        jgen.writeArrayFieldStart(ERRORS);
+        for (final JsonApiException error : document.getErrors()) {
+            jgen.writeStartObject();
+            writeIfSet(jgen, STATUS, error.getStatus());
+            writeIfSet(jgen, CODE, error.getCode());
+            writeIfSet(jgen, TITLE, error.getTitle());
+            writeIfSet(jgen, DETAIL, error.getDetail());
+            if (error.getPointer() != null) {
+                jgen.writeObjectFieldStart(SOURCE);
+                jgen.writeStringField(POINTER, error.getPointer());
+                jgen.writeEndObject();
+            }
+            jgen.writeEndObject();
+        }
+        jgen.writeEndArray();
+        jgen.writeEndObject();
+    }
+
+    private static void writeIfSet(final JsonGenerator jgen, final String name, final String value) throws IOException {
+        if (value != null) {
+            jgen.writeStringField(name, value);
+        }
+    }
+}
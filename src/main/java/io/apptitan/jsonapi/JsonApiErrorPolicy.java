@@ -0,0 +1,17 @@
+package io.apptitan.jsonapi;
+
+/**
+ * What happens when a single attribute, relationship or meta member of a resource cannot be written or read.
+ */
+public enum JsonApiErrorPolicy {
+
+    /**
+     * Fails the whole document with a {@link JsonApiException} pointing at the member
+     */
+    STRICT,
+
+    /**
+     * Leaves the member out and carries on with the rest of the resource
+     */
+    LENIENT
+}
@@ -0,0 +1,77 @@
+package io.apptitan.jsonapi;
+
+import java.lang.reflect.InvocationTargetException;
+
+import com.fasterxml.jackson.core.JsonStreamContext;
+
+/**
+ * Helpers for describing where in a document a member failed.
+ */
+final class JsonApiErrors {
+
+    static final String BAD_REQUEST = "400";
+    static final String INTERNAL_SERVER_ERROR = "500";
+
+    private JsonApiErrors() {
+        // Intentionally private
+    }
+
+    /**
+     * @return an exception for a whole resource
+     */
+    static JsonApiException resourceError(final String status, final String title, final Throwable cause) {
+        return new JsonApiException(status, null, title, detail(cause), null, cause);
+    }
+
+    /**
+     * @return an exception for {@code member} of the object being written or read in {@code container}
+     */
+    static JsonApiException memberError(
+            final String status,
+            final String title,
+            final JsonStreamContext container,
+            final String member,
+            final Throwable cause) {
+        return new JsonApiException(status, null, title, detail(cause), pointer(container, member), cause);
+    }
+
+    /**
+     * @return {@code exception} with its pointer, relative to a value written on its own, made relative to the
+     *         document by prefixing the pointer to the value about to be written in {@code container}
+     */
+    static JsonApiException within(final JsonStreamContext container, final JsonApiException exception) {
+        if ((exception.getPointer() == null) || container.inRoot()) {
+            return exception;
+        }
+        final String member = container.inArray() ? String.valueOf(container.getEntryCount())
+                : container.getCurrentName();
+        return new JsonApiException(exception.getStatus(), exception.getCode(), exception.getTitle(),
+                exception.getDetail(), pointer(container, member) + exception.getPointer(), exception.getCause());
+    }
+
+    private static String detail(final Throwable cause) {
+        final Throwable problem = (cause instanceof InvocationTargetException) && (cause.getCause() != null)
+                ? cause.getCause() : cause;
+        return (problem.getMessage() != null) ? problem.getMessage() : problem.getClass().getName();
+    }
+
+    /**
+     * @return a JSON pointer to {@code member} of the object whose stream context is {@code container}
+     */
+    static String pointer(final JsonStreamContext container, final String member) {
+        final StringBuilder pointer = new StringBuilder();
+        for (JsonStreamContext context = container.getParent(); (context != null) && !context.inRoot();
+                context = context.getParent()) {
+            if (context.inArray()) {
+                pointer.insert(0, context.getCurrentIndex()).insert(0, '/');
+            } else if (context.getCurrentName() != null) {
+                pointer.insert(0, escape(context.getCurrentName())).insert(0, '/');
+            }
+        }
+        return pointer.append('/').append(escape(member)).toString();
+    }
+
+    private static String escape(final String segment) {
+        return segment.replace("~", "~0").replace("/", "~1");
+    }
+}
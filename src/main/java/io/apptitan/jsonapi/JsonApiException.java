@@ -1,5 +1,71 @@
 package io.apptitan.jsonapi;
 
+/**
+ * A failure to write or read a member of a document, carrying the members of a JSON API error object. Write them as
+ * an errors document with {@link JsonApiErrorDocument}.
+ */
 public class JsonApiException extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
+
+    private final String status;
+    private final String code;
+    private final String title;
+    private final String pointer;
+
+    public JsonApiException(final String title, final String detail) {
+        this(null, null, title, detail, null, null);
+    }
+
+    /**
+     * @param status
+     *            the HTTP status code applicable to the problem, may be null
+     * @param code
+     *            an application specific error code, may be null
+     * @param title
+     *            a short summary of the problem
+     * @param detail
+     *            an explanation specific to this occurrence of the problem, may be null
+     * @param pointer
+     *            a JSON pointer to the member of the document the problem is in, may be null
+     * @param cause
+     *            the exception that caused the problem, may be null
+     */
+    public JsonApiException(final String status, final String code, final String title, final String detail,
+            final String pointer, final Throwable cause) {
+        super(detail, cause);
+        this.status = status;
+        this.code = code;
+        this.title = title;
+        this.pointer = pointer;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDetail() {
+        return getMessage();
+    }
+
+    /**
+     * @return a JSON pointer to the member of the document the problem is in, or null
+     */
+    public String getPointer() {
+        return pointer;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getName() + ": " + title + ((pointer != null) ? " at " + pointer : "")
+                + ((getMessage() != null) ? ": " + getMessage() : "");
+    }
 }
@@ -0,0 +1,61 @@
+package io.apptitan.jsonapi;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * A sparse fieldset compiled against a {@link JsonApiResourceTemplate}: the positions of the requested attributes
+ * and relationships, so that fields which were not requested are never read.
+ */
+final class JsonApiFieldMask {
+    private final int[] attributes;
+    private final int[] hasManyRelationships;
+    private final int[] belongsToRelationships;
+
+    JsonApiFieldMask(final JsonApiResourceTemplate template, final Set<String> fields) {
+        this.attributes = positions(names(template.getAttributeNames()), fields);
+        this.hasManyRelationships = positions(names(template.getHasManyRelationships()), fields);
+        this.belongsToRelationships = positions(names(template.getBelongsToRelationships()), fields);
+    }
+
+    private static String[] names(final SerializedString[] serializedNames) {
+        final String[] names = new String[serializedNames.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = serializedNames[i].getValue();
+        }
+        return names;
+    }
+
+    private static String[] names(final JsonApiResourceTemplate.Relationship[] relationships) {
+        final String[] names = new String[relationships.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = relationships[i].getName().getValue();
+        }
+        return names;
+    }
+
+    private static int[] positions(final String[] names, final Set<String> fields) {
+        final int[] positions = new int[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (fields.contains(names[i])) {
+                positions[count++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    public int[] getAttributes() {
+        return attributes;
+    }
+
+    public int[] getHasManyRelationships() {
+        return hasManyRelationships;
+    }
+
+    public int[] getBelongsToRelationships() {
+        return belongsToRelationships;
+    }
+}
@@ -0,0 +1,30 @@
+package io.apptitan.jsonapi;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The sparse fieldsets ({@code fields[type]=...}) requested for a document. Set as an attribute of the
+ * {@link com.fasterxml.jackson.databind.SerializerProvider} while the document is written so that every
+ * {@link JsonApiSerializer} involved applies them.
+ */
+final class JsonApiFieldsets {
+    private final Map<String, Set<String>> fieldsByType;
+
+    JsonApiFieldsets(final Map<String, Set<String>> fieldsByType) {
+        this.fieldsByType = Collections.unmodifiableMap(fieldsByType);
+    }
+
+    public boolean isEmpty() {
+        return fieldsByType.isEmpty();
+    }
+
+    /**
+     * @return the compiled fieldset for resources written with {@code template}, or null to write every field
+     */
+    public JsonApiFieldMask mask(final JsonApiResourceTemplate template) {
+        final Set<String> fields = fieldsByType.get(template.getType().getValue());
+        return (fields == null) ? null : template.fieldMask(fields);
+    }
+}
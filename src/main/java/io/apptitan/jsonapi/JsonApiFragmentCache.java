@@ -0,0 +1,71 @@
+package io.apptitan.jsonapi;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Resource objects already written by a {@link JsonApiSerializer}, kept pre-encoded so that writing the same
+ * version of a resource again copies them to the output instead of reading and encoding every field. See
+ * {@link JsonApiSerializer#fragmentCache()}.
+ * <p>
+ * Fragments are keyed by type and id, and only reused while the resource's version is equal to the version it was
+ * written with. A cache must not be shared between serializers configured differently. Once the estimated size of
+ * the fragments reaches the maximum, the least recently used are evicted.
+ */
+public final class JsonApiFragmentCache {
+
+    private static final class Fragment {
+        private final Object version;
+        private final SerializableString json;
+
+        Fragment(final Object version, final SerializableString json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    private final Cache<JsonApiResourceKey, Fragment> fragments;
+
+    /**
+     * @param maximumBytes
+     *            estimated memory the fragments may take up
+     */
+    public JsonApiFragmentCache(final long maximumBytes) {
+        // A fragment holds its characters, and its UTF-8 bytes once written to a byte stream
+        this.fragments = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((final JsonApiResourceKey key, final Fragment fragment) -> 3 * fragment.json.charLength())
+                .build();
+    }
+
+    /**
+     * @return the fragment of the resource written with {@code version}, or null if there is none
+     */
+    SerializableString get(final JsonApiResourceKey key, final Object version) {
+        final Fragment fragment = fragments.getIfPresent(key);
+        return ((fragment != null) && fragment.version.equals(version)) ? fragment.json : null;
+    }
+
+    void put(final JsonApiResourceKey key, final Object version, final SerializableString json) {
+        fragments.put(key, new Fragment(version, json));
+    }
+
+    /**
+     * Discards the fragment of the resource with the given type, as written in documents, and id
+     */
+    public void invalidate(final String type, final String id) {
+        fragments.invalidate(new JsonApiResourceKey(type, id));
+    }
+
+    public void invalidateAll() {
+        fragments.invalidateAll();
+    }
+
+    /**
+     * @return number of fragments cached
+     */
+    public long size() {
+        return fragments.size();
+    }
+}
@@ -0,0 +1,136 @@
+package io.apptitan.jsonapi;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * The resources of a document reached so far, set as a {@link SerializerProvider} attribute while the document is
+ * written so that no resource is written or followed twice however the graph of resources loops back on itself.
+ * <p>
+ * A resource written inside another, such as an entity held by an attribute, is only written once within the
+ * resource at the top of the document it is part of, after which it is written as a resource identifier. Resources
+ * are tracked by identity and forgotten once that top level resource has been written, so that a collection
+ * streamed as primary data is not held in memory.
+ */
+final class JsonApiGraph {
+    private final Map<Object, Object> included = new LinkedHashMap<>();
+    private final Map<JsonApiIncludeTree, Set<Object>> followed = new IdentityHashMap<>();
+    private final Set<String> collected = new HashSet<>();
+    private Map<Object, Object> loaded = Collections.emptyMap();
+    private JsonApiIncludeTree collecting = JsonApiIncludeTree.EMPTY;
+    private Set<Object> written = null;
+    private int depth = 0;
+    private boolean nested = false;
+
+    /**
+     * @return the graph of the document being written, or a new one for a resource written on its own
+     */
+    static JsonApiGraph of(final SerializerProvider provider) {
+        JsonApiGraph graph = (JsonApiGraph) provider.getAttribute(JsonApiGraph.class);
+        if (graph == null) {
+            graph = new JsonApiGraph();
+            provider.setAttribute(JsonApiGraph.class, graph);
+        }
+        return graph;
+    }
+
+    /**
+     * Starts writing {@code resource}
+     *
+     * @return false if it has already been written within the current top level resource, in which case it must be
+     *         written as a resource identifier and {@link #exit()} not called
+     */
+    boolean enter(final Object resource) {
+        if (depth == 0) {
+            written = Collections.newSetFromMap(new IdentityHashMap<>());
+            nested = false;
+        } else {
+            nested = true;
+        }
+        if (!written.add(resource)) {
+            return false;
+        }
+        depth++;
+        return true;
+    }
+
+    /**
+     * Finishes writing the resource last entered
+     */
+    void exit() {
+        if (--depth == 0) {
+            written = null;
+        }
+    }
+
+    /**
+     * @return true if the resource being written is inside another
+     */
+    boolean isNested() {
+        return depth > 1;
+    }
+
+    /**
+     * @return true if a resource has been reached inside the top level resource being written, as a nested resource
+     *         or as the identifier of one already written
+     */
+    boolean hasNested() {
+        return nested;
+    }
+
+    /**
+     * @return false if the include paths below {@code include} have already been followed from {@code resource}
+     */
+    boolean follow(final Object resource, final JsonApiIncludeTree include) {
+        return followed.computeIfAbsent(include, i -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                .add(resource);
+    }
+
+    /**
+     * Follows {@code include} from the relationships read while the next top level resource is written, or stops
+     * following include paths while writing if {@code include} is empty
+     */
+    void collectWhileWriting(final JsonApiIncludeTree include) {
+        collecting = include;
+        collected.clear();
+    }
+
+    /**
+     * @return the include paths to follow from the relationships of the top level resource being written
+     */
+    JsonApiIncludeTree getCollecting() {
+        return collecting;
+    }
+
+    /**
+     * @return names of the relationships of the top level resource last written whose include paths have been
+     *         followed while writing it
+     */
+    Set<String> getCollected() {
+        return collected;
+    }
+
+    /**
+     * @return the resources to include, keyed by their type and id
+     */
+    Map<Object, Object> getIncluded() {
+        return included;
+    }
+
+    /**
+     * @return resources loaded by a {@link JsonApiIncludeLoader}, keyed by their type and id
+     */
+    Map<Object, Object> getLoaded() {
+        return loaded;
+    }
+
+    void setLoaded(final Map<Object, Object> loaded) {
+        this.loaded = loaded;
+    }
+}
@@ -0,0 +1,27 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Reads the identity of a related resource for its resource linkage without loading it, such as the id of an
+ * uninitialized JPA proxy. See {@link JsonApiIdentifierResolvers} for the built in resolvers.
+ */
+public interface JsonApiIdentifierResolver {
+
+    /**
+     * @return the id of {@code resource} if it can be read without initializing the resource, otherwise null to
+     *         read it through the resource's id property
+     */
+    Object identifier(Object resource) throws ReflectiveOperationException;
+
+    /**
+     * @return the class {@code resource} is mapped as, which for a proxy is the class it stands in for
+     */
+    Class<?> resourceClass(Object resource) throws ReflectiveOperationException;
+
+    /**
+     * @return false if {@code related}, a related resource or collection of them, has not been loaded and reading
+     *         it would query for it. Resource linkage is not written for unloaded collections
+     */
+    default boolean isInitialized(final Object related) throws ReflectiveOperationException {
+        return true;
+    }
+}
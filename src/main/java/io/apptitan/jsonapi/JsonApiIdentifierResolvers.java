@@ -0,0 +1,45 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Built in {@link JsonApiIdentifierResolver} implementations.
+ */
+public enum JsonApiIdentifierResolvers implements JsonApiIdentifierResolver {
+
+    /**
+     * Reads ids of Hibernate proxies from their lazy initializer, so writing a relationship to a proxy never loads
+     * it, and treats uninitialized persistent collections as not loaded. Any other resource is read as by
+     * {@link #PROPERTY}. Hibernate does not need to be on the classpath.
+     */
+    HIBERNATE_PROXIES {
+        @Override
+        public Object identifier(final Object resource) throws ReflectiveOperationException {
+            return HibernateProxies.identifier(resource);
+        }
+
+        @Override
+        public Class<?> resourceClass(final Object resource) throws ReflectiveOperationException {
+            final Class<?> persistentClass = HibernateProxies.persistentClass(resource);
+            return (persistentClass != null) ? persistentClass : resource.getClass();
+        }
+
+        @Override
+        public boolean isInitialized(final Object related) throws ReflectiveOperationException {
+            return HibernateProxies.isInitialized(related);
+        }
+    },
+
+    /**
+     * Always reads ids through the id property of the resource's own class.
+     */
+    PROPERTY {
+        @Override
+        public Object identifier(final Object resource) {
+            return null;
+        }
+
+        @Override
+        public Class<?> resourceClass(final Object resource) {
+            return resource.getClass();
+        }
+    };
+}
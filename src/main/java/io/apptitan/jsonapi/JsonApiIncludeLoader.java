@@ -0,0 +1,189 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Loads the unloaded resources reached through the include paths of a response before it is written. The include
+ * tree is walked one level at a time: the related resources of a level that are not loaded are gathered by class,
+ * each class is loaded with one {@link JsonApiBatchLoader} call, the calls of a level run concurrently on the
+ * executor, and the loaded resources are followed for the next level.
+ */
+final class JsonApiIncludeLoader {
+
+    /**
+     * A resource reached through an include path, along with the paths below it
+     */
+    private static final class Reached {
+        private final Object resource;
+        private final JsonApiIncludeTree include;
+
+        Reached(final Object resource, final JsonApiIncludeTree include) {
+            this.resource = resource;
+            this.include = include;
+        }
+    }
+
+    /**
+     * A resource reached that has not been loaded
+     */
+    private static final class Unloaded {
+        private final JsonApiResourceKey key;
+        private final Class<?> type;
+        private final Object id;
+        private final JsonApiIncludeTree include;
+
+        Unloaded(final JsonApiResourceKey key, final Class<?> type, final Object id, final JsonApiIncludeTree include) {
+            this.key = key;
+            this.type = type;
+            this.id = id;
+            this.include = include;
+        }
+    }
+
+    private final JsonApiBatchLoader loader;
+    private final Executor executor;
+
+    JsonApiIncludeLoader(final JsonApiBatchLoader loader, final Executor executor) {
+        this.loader = loader;
+        this.executor = executor;
+    }
+
+    /**
+     * @param data
+     *            the primary data, which must not be an {@link Iterator} or stream as it is read again when written
+     * @return the resources loaded, keyed by their type and id
+     */
+    Map<Object, Object> load(final Object data, final JsonApiIncludeTree include, final SerializerProvider provider)
+            throws IOException {
+        final Map<Object, Object> loaded = new HashMap<>();
+        final Set<Object> followed = new HashSet<>();
+        List<Reached> level = new ArrayList<>();
+        final Iterator<?> resources = JsonApiCollections.isCollection(data)
+                ? JsonApiCollections.iterator(data) : Collections.singleton(data).iterator();
+        while (resources.hasNext()) {
+            final Object resource = resources.next();
+            if (resource != null) {
+                level.add(new Reached(resource, include));
+            }
+        }
+
+        try {
+            while (!level.isEmpty()) {
+                final List<Reached> next = new ArrayList<>();
+                final List<Unloaded> unloaded = new ArrayList<>();
+                for (final Reached reached : level) {
+                    final JsonApiSerializer serializer = serializer(reached.resource, provider);
+                    if (serializer != null) {
+                        serializer.forEachRelated(reached.resource, reached.include,
+                                (related, below) -> reach(related, below, provider, followed, next, unloaded));
+                    }
+                }
+                next.addAll(load(unloaded, loaded));
+                level = next;
+            }
+        } catch (final ReflectiveOperationException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not read included resources",
+                    e);
+        }
+        return loaded;
+    }
+
+    private static JsonApiSerializer serializer(final Object resource, final SerializerProvider provider)
+            throws IOException {
+        final JsonSerializer<Object> serializer = provider.findValueSerializer(resource.getClass(), null);
+        return (serializer instanceof JsonApiSerializer) ? (JsonApiSerializer) serializer : null;
+    }
+
+    /**
+     * Follows {@code related} on the next level if it is loaded, otherwise adds it to the resources to load. A
+     * resource reached again through the same include paths is not followed again.
+     */
+    private static void reach(
+            final Object related,
+            final JsonApiIncludeTree below,
+            final SerializerProvider provider,
+            final Set<Object> followed,
+            final List<Reached> next,
+            final List<Unloaded> unloaded) throws ReflectiveOperationException, IOException {
+        final JsonApiSerializer serializer = serializer(related, provider);
+        if (serializer == null) {
+            return;
+        }
+        final JsonApiResourceKey key = serializer.resourceKey(related);
+        if (!followed.add(Arrays.asList(key, below))) {
+            return;
+        }
+        final JsonApiIdentifierResolver resolver = serializer.identifierResolver();
+        if (resolver.isInitialized(related)) {
+            if (!below.isEmpty()) {
+                next.add(new Reached(related, below));
+            }
+            return;
+        }
+        final Object id = resolver.identifier(related);
+        if (id != null) {
+            unloaded.add(new Unloaded(key, resolver.resourceClass(related), id, below));
+        }
+    }
+
+    /**
+     * Loads the resources of each class with one call, the classes concurrently
+     *
+     * @return the resources loaded that have include paths to follow
+     */
+    private List<Reached> load(final List<Unloaded> unloaded, final Map<Object, Object> loaded) {
+        if (unloaded.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<Class<?>, Set<Object>> idsByType = new HashMap<>();
+        for (final Unloaded resource : unloaded) {
+            idsByType.computeIfAbsent(resource.type, t -> new LinkedHashSet<>()).add(resource.id);
+        }
+
+        final Map<Class<?>, CompletableFuture<Map<?, ?>>> loads = new HashMap<>();
+        for (final Map.Entry<Class<?>, Set<Object>> ids : idsByType.entrySet()) {
+            loads.put(ids.getKey(), CompletableFuture.supplyAsync(() -> {
+                try {
+                    return loader.load(ids.getKey(), ids.getValue());
+                } catch (final Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(loads.values().toArray(new CompletableFuture<?>[loads.size()])).join();
+        } catch (final CompletionException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not load included resources",
+                    (e.getCause() != null) ? e.getCause() : e);
+        }
+
+        final List<Reached> next = new ArrayList<>();
+        for (final Unloaded resource : unloaded) {
+            final Map<?, ?> resources = loads.get(resource.type).join();
+            final Object loadedResource = (resources != null) ? resources.get(resource.id) : null;
+            if (loadedResource != null) {
+                loaded.put(resource.key, loadedResource);
+                if (!resource.include.isEmpty()) {
+                    next.add(new Reached(loadedResource, resource.include));
+                }
+            }
+        }
+        return next;
+    }
+}
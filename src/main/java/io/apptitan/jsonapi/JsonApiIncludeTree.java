@@ -0,0 +1,70 @@
+package io.apptitan.jsonapi;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Relationship paths to include in a compound document, such as {@code author,comments.author}, merged into a tree
+ * so that shared prefixes are only followed once.
+ */
+final class JsonApiIncludeTree {
+
+    static final JsonApiIncludeTree EMPTY = new JsonApiIncludeTree();
+
+    /**
+     * Number of relationships followed along an include path unless the response sets another limit
+     */
+    static final int DEFAULT_MAX_DEPTH = 5;
+
+    private final Map<String, JsonApiIncludeTree> children = new LinkedHashMap<>();
+
+    private JsonApiIncludeTree() {
+        // Use parse
+    }
+
+    /**
+     * @param paths
+     *            dot separated relationship paths, each of which may itself be a comma separated list as found in the
+     *            {@code include} query parameter
+     */
+    static JsonApiIncludeTree parse(final Iterable<String> paths) {
+        return parse(paths, 0);
+    }
+
+    /**
+     * @param maxDepth
+     *            number of relationships followed along a path, beyond which the rest of the path is ignored, or 0
+     *            for no limit
+     */
+    static JsonApiIncludeTree parse(final Iterable<String> paths, final int maxDepth) {
+        final JsonApiIncludeTree root = new JsonApiIncludeTree();
+        for (final String list : paths) {
+            for (final String path : list.split(",")) {
+                JsonApiIncludeTree node = root;
+                int depth = 0;
+                for (final String name : path.trim().split("\\.")) {
+                    if ((maxDepth > 0) && (depth == maxDepth)) {
+                        break;
+                    }
+                    if (!name.isEmpty()) {
+                        node = node.children.computeIfAbsent(name, k -> new JsonApiIncludeTree());
+                        depth++;
+                    }
+                }
+            }
+        }
+        return root.isEmpty() ? EMPTY : root;
+    }
+
+    /**
+     * @return included relationships keyed by their name in the document
+     */
+    public Map<String, JsonApiIncludeTree> getChildren() {
+        return Collections.unmodifiableMap(children);
+    }
+
+    public boolean isEmpty() {
+        return children.isEmpty();
+    }
+}
@@ -0,0 +1,65 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Receives measurements of documents being written and read, see {@link JsonApiSerializer#listener()} and
+ * {@link JsonApiDeserializer#listener()}. Every method does nothing by default. Implementations are called from
+ * every thread using the mapper and must be thread safe.
+ * <p>
+ * Nothing is measured when the listener is {@link #NONE}.
+ */
+public interface JsonApiListener {
+
+    /**
+     * Listener that is not called at all
+     */
+    JsonApiListener NONE = new JsonApiListener() {
+    };
+
+    /**
+     * Called after a resource has been written, whether as primary data or included
+     */
+    default void resourceWritten(final Class<?> type, final long nanos) {
+        // Nothing to do
+    }
+
+    /**
+     * Called after a {@link JsonApiResponse} has been written
+     *
+     * @param resources
+     *            number of resources in its primary data
+     * @param included
+     *            number of resources reached through its include paths or included explicitly
+     */
+    default void documentWritten(final int resources, final int included, final long nanos) {
+        // Nothing to do
+    }
+
+    /**
+     * Called after a {@link JsonApiWriter} has written a document, with its length in bytes
+     */
+    default void bytesWritten(final long bytes) {
+        // Nothing to do
+    }
+
+    /**
+     * Called after a resource has been read
+     */
+    default void resourceRead(final Class<?> type, final long nanos) {
+        // Nothing to do
+    }
+
+    /**
+     * Called after a document of resources of {@code type} has been read
+     */
+    default void documentRead(final Class<?> type, final int resources, final long nanos) {
+        // Nothing to do
+    }
+
+    /**
+     * Called when the metadata of a class is not cached and has to be built, once per class for each serializer and
+     * deserializer. Every other resource of the class written or read is a cache hit.
+     */
+    default void metadataBuilt(final Class<?> type, final long nanos) {
+        // Nothing to do
+    }
+}
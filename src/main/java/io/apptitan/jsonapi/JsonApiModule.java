@@ -0,0 +1,105 @@
+package io.apptitan.jsonapi;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.Entity;
+
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.deser.Deserializers;
+import com.fasterxml.jackson.databind.ser.Serializers;
+
+/**
+ * Registers JSON API serialization with an {@link com.fasterxml.jackson.databind.ObjectMapper} for every resource
+ * class, see {@link #isResource(Class)}. Jackson asks the module for a serializer and deserializer once per type and
+ * caches them, and both are immutable, so the mapper can be shared between any number of threads.
+ */
+public class JsonApiModule extends Module {
+
+    private final JsonApiSerializer serializer;
+    private final JsonApiDeserializer deserializer;
+    private final Set<Class<?>> resources = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    public JsonApiModule() {
+        this(new JsonApiSerializer(), new JsonApiDeserializer());
+    }
+
+    /**
+     * @param serializer
+     *            writes every resource, usually a subclass overriding its configuration
+     * @param deserializer
+     *            reads every resource, usually a subclass overriding its configuration
+     */
+    public JsonApiModule(final JsonApiSerializer serializer, final JsonApiDeserializer deserializer) {
+        this.serializer = serializer;
+        this.deserializer = deserializer;
+    }
+
+    /**
+     * Registers classes that are resources without being annotated as such. Must be called before the module is
+     * registered with a mapper.
+     */
+    public JsonApiModule addResources(final Class<?>... types) {
+        Collections.addAll(resources, types);
+        return this;
+    }
+
+    /**
+     * @return true if {@code type} is written and read as a JSON API resource. Defaults to registered classes and
+     *         classes annotated with {@link JsonApiResource} or {@link Entity}, including their subclasses such as
+     *         JPA proxies
+     */
+    protected boolean isResource(final Class<?> type) {
+        if (type.isEnum() || type.isInterface() || type.isArray() || type.isPrimitive()) {
+            return false;
+        }
+        for (Class<?> current = type; (current != null) && (current != Object.class); current = current.getSuperclass()) {
+            if (resources.contains(current) || current.isAnnotationPresent(JsonApiResource.class)
+                    || current.isAnnotationPresent(Entity.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String getModuleName() {
+        return getClass().getName();
+    }
+
+    @Override
+    public Version version() {
+        return Version.unknownVersion();
+    }
+
+    @Override
+    public void setupModule(final SetupContext context) {
+        context.addSerializers(new Serializers.Base() {
+            @Override
+            public JsonSerializer<?> findSerializer(
+                    final SerializationConfig config,
+                    final JavaType type,
+                    final BeanDescription beanDesc) {
+                return isResource(type.getRawClass()) ? serializer : null;
+            }
+        });
+        context.addDeserializers(new Deserializers.Base() {
+            @Override
+            public JsonDeserializer<?> findBeanDeserializer(
+                    final JavaType type,
+                    final DeserializationConfig config,
+                    final BeanDescription beanDesc) throws JsonMappingException {
+                return isResource(type.getRawClass()) ? deserializer.forType(type.getRawClass()) : null;
+            }
+        });
+    }
+}
@@ -0,0 +1,289 @@
+package io.apptitan.jsonapi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+
+/**
+ * A page of a collection requested with cursor (keyset) pagination: {@code page[size]}, and either
+ * {@code page[after]} or {@code page[before]} holding a cursor from the links of an earlier page.
+ * <p>
+ * A cursor holds the sort keys it was written for and the values of those keys in a resource, followed by its id
+ * unless {@code id} is itself a sort key, so that a page is selected by comparing those columns instead of skipping
+ * rows with an offset. A cursor given with another sort fails with a 400 error. Its values are read as the declared
+ * types of their attributes, see {@link Builder#mapper(ObjectMapper)}, and the id is taken to be sorted in the
+ * direction of the last sort key. For example, sorted by {@code -created-at}, the page after a cursor is
+ *
+ * <pre>
+ * WHERE (created_at, id) &lt; (:createdAt, :id) ORDER BY created_at DESC, id DESC LIMIT :limit
+ * </pre>
+ *
+ * where the parameters are {@link #getCursorValues()} and {@link #getLimit()}. A row value comparison only holds
+ * when every key is sorted in the same direction. With mixed directions each key is compared in its own direction,
+ * the later keys only where the earlier ones are equal. Sorted by {@code -created-at,title}, for example:
+ *
+ * <pre>
+ * WHERE created_at &lt; :createdAt
+ *    OR (created_at = :createdAt AND title &gt; :title)
+ *    OR (created_at = :createdAt AND title = :title AND id &gt; :id)
+ * ORDER BY created_at DESC, title ASC, id ASC LIMIT :limit
+ * </pre>
+ *
+ * The page before a cursor is selected with every comparison and direction reversed, and given to the response in
+ * that order, nearest to the cursor first; it is written in sort order.
+ * <p>
+ * The data of the response is read up to {@link #getSize()} resources. One more resource means there is another
+ * page, which is then linked to from {@code links}.
+ */
+public final class JsonApiPage {
+
+    static final String SIZE = "size";
+    static final String MORE = "more";
+
+    private static final JsonFactory CURSOR_FACTORY = new JsonFactory();
+    private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper(CURSOR_FACTORY);
+    private static final JsonApiSerializer CURSOR_SERIALIZER = new JsonApiSerializer();
+    private static final Base64.Encoder CURSOR_ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final Class<?> type;
+    private final int size;
+    private final String after;
+    private final String before;
+    private final List<String> sort;
+    private final List<Object> cursorValues;
+
+    private JsonApiPage(final Builder builder) {
+        this.type = builder.type;
+        this.size = builder.size;
+        this.after = builder.after;
+        this.before = builder.before;
+        this.sort = Collections.unmodifiableList(new ArrayList<>(builder.sort));
+        final String cursor = (before != null) ? before : after;
+        this.cursorValues = (cursor != null) ? decode(cursor, builder.mapper) : Collections.emptyList();
+    }
+
+    /**
+     * @return class of the resources in the collection, whose serializer writes the links
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return number of resources written
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return number of resources to select, one more than the size to find out if there is another page
+     */
+    public int getLimit() {
+        return size + 1;
+    }
+
+    /**
+     * @return true if the page is before its cursor rather than after it
+     */
+    public boolean isBefore() {
+        return before != null;
+    }
+
+    /**
+     * @return true for the first page, which has no cursor
+     */
+    public boolean isFirst() {
+        return (after == null) && (before == null);
+    }
+
+    /**
+     * @return sort keys as requested, such as {@code "-created-at"} for a descending attribute
+     */
+    public List<String> getSort() {
+        return sort;
+    }
+
+    /**
+     * @return values of the sort keys and id of the resource next to the page, each of the declared type of its
+     *         attribute, empty for the first page
+     */
+    public List<Object> getCursorValues() {
+        return cursorValues;
+    }
+
+    /**
+     * @return {@code sort} and {@code values} as a cursor, each value written by the serializer {@code provider} has
+     *         for it
+     */
+    static String encode(final List<String> sort, final List<Object> values, final SerializerProvider provider)
+            throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final JsonGenerator jgen = CURSOR_FACTORY.createGenerator(bytes)) {
+            jgen.writeStartArray();
+            jgen.writeStartArray();
+            for (final String key : sort) {
+                jgen.writeString(key);
+            }
+            jgen.writeEndArray();
+            for (final Object value : values) {
+                provider.defaultSerializeValue(value, jgen);
+            }
+            jgen.writeEndArray();
+        }
+        return CURSOR_ENCODER.encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @return the values of {@code cursor}, read with {@code mapper} as the types of the properties the serializer it
+     *         has for {@link #type} sorts by
+     */
+    private List<Object> decode(final String cursor, final ObjectMapper mapper) {
+        final ObjectMapper reader = (mapper != null) ? mapper : CURSOR_MAPPER;
+        final List<JsonApiProperty> properties = serializer(mapper).cursorProperties(type, sort);
+        final List<Object> values = new ArrayList<>(properties.size());
+        try (final JsonParser jp = CURSOR_FACTORY.createParser(Base64.getUrlDecoder().decode(cursor))) {
+            if ((jp.nextToken() != JsonToken.START_ARRAY) || (jp.nextToken() != JsonToken.START_ARRAY)) {
+                throw invalidCursor(cursor);
+            }
+            final List<String> cursorSort = new ArrayList<>();
+            for (JsonToken token = jp.nextToken(); token != JsonToken.END_ARRAY; token = jp.nextToken()) {
+                if (token != JsonToken.VALUE_STRING) {
+                    throw invalidCursor(cursor);
+                }
+                cursorSort.add(jp.getText());
+            }
+            if (!cursorSort.equals(sort)) {
+                throw new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid cursor",
+                        "The cursor is for sort " + String.join(",", cursorSort) + ", not " + String.join(",", sort),
+                        null, null);
+            }
+            for (final JsonApiProperty property : properties) {
+                final JsonToken token = jp.nextToken();
+                if ((token == null) || !token.isScalarValue()) {
+                    throw invalidCursor(cursor);
+                }
+                values.add(reader.readValue(jp, reader.getTypeFactory().constructType(property.getGenericType())));
+            }
+            if (jp.nextToken() != JsonToken.END_ARRAY) {
+                throw invalidCursor(cursor);
+            }
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid cursor", cursor, null, e);
+        }
+        return values;
+    }
+
+    /**
+     * @return the serializer {@code mapper} writes {@link #type} with, or a default one without a mapper
+     */
+    private JsonApiSerializer serializer(final ObjectMapper mapper) {
+        if (mapper == null) {
+            return CURSOR_SERIALIZER;
+        }
+        final JsonSerializer<Object> serializer;
+        try {
+            serializer = ((DefaultSerializerProvider) mapper.getSerializerProvider())
+                    .createInstance(mapper.getSerializationConfig(), mapper.getSerializerFactory())
+                    .findValueSerializer(type, null);
+        } catch (final JsonMappingException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not read cursor", e);
+        }
+        if (!(serializer instanceof JsonApiSerializer)) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not read cursor",
+                    new IllegalArgumentException(type.getName() + " is not written as a resource"));
+        }
+        return (JsonApiSerializer) serializer;
+    }
+
+    private static JsonApiException invalidCursor(final String cursor) {
+        return new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid cursor", cursor, null, null);
+    }
+
+    public static class Builder {
+        private final Class<?> type;
+        private final int size;
+        private final List<String> sort = new ArrayList<>();
+        private String after = null;
+        private String before = null;
+        private ObjectMapper mapper = null;
+
+        /**
+         * @param type
+         *            class of the resources in the collection
+         * @param size
+         *            number of resources per page
+         */
+        public Builder(final Class<?> type, final int size) {
+            if (size < 1) {
+                throw new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid page size", String.valueOf(size),
+                        null, null);
+            }
+            this.type = type;
+            this.size = size;
+        }
+
+        /**
+         * The page after {@code cursor}, as sent in {@code page[after]}. Ignored when null.
+         */
+        public Builder after(final String cursor) {
+            this.after = cursor;
+            return this;
+        }
+
+        /**
+         * The page before {@code cursor}, as sent in {@code page[before]}. Ignored when null.
+         */
+        public Builder before(final String cursor) {
+            this.before = cursor;
+            return this;
+        }
+
+        /**
+         * Sort keys as sent in the {@code sort} query parameter, attribute names in the document or {@code id},
+         * descending when prefixed with {@code -}. Each key may also be a comma separated list.
+         */
+        public Builder sort(final String... keys) {
+            for (final String list : keys) {
+                for (final String key : list.split(",")) {
+                    if (!key.trim().isEmpty()) {
+                        this.sort.add(key.trim());
+                    }
+                }
+            }
+            return this;
+        }
+
+        /**
+         * The mapper the response is written with. Cursor values are read with it, as the declared types of the
+         * attributes its serializer for the resource class sorts by. Without one, the attributes are found with the
+         * defaults of {@link JsonApiSerializer} and read as a plain {@link ObjectMapper} does, which reads dates
+         * from the epoch milliseconds it writes them as.
+         */
+        public Builder mapper(final ObjectMapper mapper) {
+            this.mapper = mapper;
+            return this;
+        }
+
+        public JsonApiPage build() {
+            if ((after != null) && (before != null)) {
+                throw new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid page",
+                        "Only one of page[after] and page[before] may be given", null, null);
+            }
+            return new JsonApiPage(this);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.apptitan.jsonapi;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+
+/**
+ * A bean property of a resource class together with the accessor bound to it.
+ */
+final class JsonApiProperty {
+    private final String name;
+    private final Class<?> type;
+    private final Type genericType;
+    private final Field field;
+    private final JsonApiPropertyAccessor accessor;
+
+    JsonApiProperty(
+            final String name,
+            final Class<?> type,
+            final Type genericType,
+            final Field field,
+            final JsonApiPropertyAccessor accessor) {
+        this.name = name;
+        this.type = type;
+        this.genericType = genericType;
+        this.field = field;
+        this.accessor = accessor;
+    }
+
+    public Object get(final Object target) throws ReflectiveOperationException {
+        return accessor.get(target);
+    }
+
+    public void set(final Object target, final Object value) throws ReflectiveOperationException {
+        accessor.set(target, value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Type getGenericType() {
+        return genericType;
+    }
+
+    /**
+     * @return the field backing this property, or null if the property only has accessor methods
+     */
+    public Field getField() {
+        return field;
+    }
+}
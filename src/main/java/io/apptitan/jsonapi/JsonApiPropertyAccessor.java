@@ -0,0 +1,18 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Reads and writes a single bean property. Accessors are bound once per class and property by a
+ * {@link JsonApiAccessorStrategy} and must be safe to share between threads.
+ */
+public interface JsonApiPropertyAccessor {
+
+    /**
+     * @return the value of the property on {@code target}
+     */
+    Object get(Object target) throws ReflectiveOperationException;
+
+    /**
+     * Sets the property on {@code target} to {@code value}
+     */
+    void set(Object target, Object value) throws ReflectiveOperationException;
+}
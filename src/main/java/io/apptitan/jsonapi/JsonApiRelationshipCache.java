@@ -0,0 +1,49 @@
+package io.apptitan.jsonapi;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per-class cache of {@link JsonApiRelationshipMap}s. One cache exists for each distinct combination of id,
+ * belongsTo and hasMany annotations and accessor strategy, so serializers and deserializers configured alike share
+ * the same entries.
+ */
+final class JsonApiRelationshipCache {
+
+    private static final ConcurrentMap<List<Object>, JsonApiRelationshipCache> CACHES = new ConcurrentHashMap<>();
+
+    private final ClassValue<JsonApiRelationshipMap> relationshipMaps;
+
+    private JsonApiRelationshipCache(
+            final List<Class<? extends Annotation>> idAnnotations,
+            final List<Class<? extends Annotation>> belongsToAnnotations,
+            final List<Class<? extends Annotation>> hasManyAnnotations,
+            final JsonApiAccessorStrategy accessorStrategy) {
+        this.relationshipMaps = new ClassValue<JsonApiRelationshipMap>() {
+            @Override
+            protected JsonApiRelationshipMap computeValue(final Class<?> type) {
+                return new JsonApiRelationshipMap(type, idAnnotations, belongsToAnnotations, hasManyAnnotations,
+                        accessorStrategy);
+            }
+        };
+    }
+
+    static JsonApiRelationshipCache of(
+            final List<Class<? extends Annotation>> idAnnotations,
+            final List<Class<? extends Annotation>> belongsToAnnotations,
+            final List<Class<? extends Annotation>> hasManyAnnotations,
+            final JsonApiAccessorStrategy accessorStrategy) {
+        final List<Object> key = Arrays.asList(new ArrayList<>(idAnnotations), new ArrayList<>(belongsToAnnotations),
+                new ArrayList<>(hasManyAnnotations), accessorStrategy);
+        return CACHES.computeIfAbsent(key, k -> new JsonApiRelationshipCache(new ArrayList<>(idAnnotations),
+                new ArrayList<>(belongsToAnnotations), new ArrayList<>(hasManyAnnotations), accessorStrategy));
+    }
+
+    public JsonApiRelationshipMap get(final Class<?> type) {
+        return relationshipMaps.get(type);
+    }
+}
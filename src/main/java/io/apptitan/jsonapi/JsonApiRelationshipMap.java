@@ -1,45 +1,93 @@
 package io.apptitan.jsonapi;
 
+import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+
 import org.apache.commons.beanutils.PropertyUtils;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+/**
+ * Immutable description of how the fields of a class map onto a JSON API resource. Instances are computed once per
+ * class by {@link JsonApiRelationshipCache} and shared between threads.
+ */
 class JsonApiRelationshipMap {
-    private final Set<Field> attributes = new HashSet<>();
-    private final Set<Field> belongsToRelationships = new HashSet<>();
-    private final Set<Field> hasManyRelationships = new HashSet<>();
-    private Field idAttribute = null;
-    private Field meta = null;
+    static final List<Class<? extends Annotation>> ID_ANNOTATIONS =
+            Collections.unmodifiableList(Arrays.asList(JsonApiId.class, Id.class));
+    static final List<Class<? extends Annotation>> BELONGS_TO_ANNOTATIONS = Collections.unmodifiableList(
+            Arrays.asList(BelongsTo.class, ManyToOne.class, OneToOne.class));
+    static final List<Class<? extends Annotation>> HAS_MANY_ANNOTATIONS = Collections.unmodifiableList(
+            Arrays.asList(HasMany.class, OneToMany.class, ManyToMany.class));
+
+    private final List<JsonApiProperty> attributes;
+    private final List<JsonApiProperty> belongsToRelationships;
+    private final List<JsonApiProperty> hasManyRelationships;
+    private final Map<String, JsonApiProperty> properties;
+    private final JsonApiProperty idAttribute;
+    private final JsonApiProperty meta;
 
     public JsonApiRelationshipMap(
-            final Object object,
+            final Class<?> type,
             final List<Class<? extends Annotation>> idAnnotations,
             final List<Class<? extends Annotation>> belongsToAnnotations,
-            final List<Class<? extends Annotation>> hasManyAnnotations)
-                    throws IllegalAccessException, InvocationTargetException {
+            final List<Class<? extends Annotation>> hasManyAnnotations,
+            final JsonApiAccessorStrategy accessorStrategy) {
+        final List<JsonApiProperty> attributes = new ArrayList<>();
+        final List<JsonApiProperty> belongsToRelationships = new ArrayList<>();
+        final List<JsonApiProperty> hasManyRelationships = new ArrayList<>();
+        final Map<String, JsonApiProperty> properties = new HashMap<>();
+        JsonApiProperty idAttribute = null;
+        JsonApiProperty meta = null;
+
         // Get hold of all fields in the class hierarchy
-        final Set<Field> fields = getAllFields(object);
+        final Map<String, Field> fields = new HashMap<>();
+        for (final Field field : getAllFields(type)) {
+            fields.putIfAbsent(field.getName(), field);
+        }
+
+        // Bind an accessor to every bean property once
+        final Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+        for (final PropertyDescriptor descriptor : PropertyUtils.getPropertyDescriptors(type)) {
+            if ((descriptor.getReadMethod() == null) && (descriptor.getWriteMethod() == null)) {
+                continue;
+            }
+            descriptors.put(descriptor.getName(), descriptor);
+            final Field field = fields.get(descriptor.getName());
+            final JsonApiPropertyAccessor accessor = accessorStrategy.accessor(type, descriptor);
+            final JsonApiProperty property = (field != null)
+                    ? new JsonApiProperty(field.getName(), field.getType(), field.getGenericType(), field, accessor)
+                    : new JsonApiProperty(descriptor.getName(), descriptor.getPropertyType(), genericType(descriptor),
+                            null, accessor);
+            properties.put(property.getName(), property);
+        }
 
-        // Get hold of field values
-        for (final Field field : fields) {
+        for (final Field field : getAllFields(type)) {
             final String fieldName = field.getName();
             final List<Class<? extends Annotation>> fieldAnnotations = Arrays.asList(field.getAnnotations()).stream()
                     .map(o -> o.annotationType()).collect(Collectors.toList());
 
             // Must have a getter
-            try {
-                PropertyUtils.getProperty(object, fieldName);
-            } catch (final NoSuchMethodException e) {
+            final JsonApiProperty property = properties.get(fieldName);
+            if ((property == null) || !field.equals(property.getField())
+                    || (descriptors.get(fieldName).getReadMethod() == null)) {
                 continue;
             }
 
@@ -52,20 +100,20 @@ class JsonApiRelationshipMap {
             // Check for Identifier
             final boolean isIdentifier = !Collections.disjoint(idAnnotations, fieldAnnotations);
             if (isIdentifier) {
-                this.idAttribute = field;
+                idAttribute = property;
                 continue;
             }
 
             // Check for meta
             if (JsonApiConstants.META.equals(fieldName)) {
-                this.meta = field;
+                meta = property;
                 continue;
             }
 
             // hasMany
             final boolean isHasManyRelationship = !Collections.disjoint(hasManyAnnotations, fieldAnnotations);
             if (isHasManyRelationship) {
-                this.hasManyRelationships.add(field);
+                hasManyRelationships.add(property);
                 continue;
             }
 
@@ -73,19 +121,33 @@ class JsonApiRelationshipMap {
             final boolean isBelongsToRelationship = !Collections.disjoint(belongsToAnnotations, fieldAnnotations);
             final boolean isEnum = field.getType().isEnum();
             if (isBelongsToRelationship || isEnum) {
-                this.belongsToRelationships.add(field);
+                belongsToRelationships.add(property);
                 continue;
             }
 
             // attributes
-            this.attributes.add(field);
+            attributes.add(property);
         }
+
+        this.attributes = Collections.unmodifiableList(attributes);
+        this.belongsToRelationships = Collections.unmodifiableList(belongsToRelationships);
+        this.hasManyRelationships = Collections.unmodifiableList(hasManyRelationships);
+        this.properties = Collections.unmodifiableMap(properties);
+        this.idAttribute = idAttribute;
+        this.meta = meta;
     }
 
-    private Set<Field> getAllFields(final Object object) {
-        final Set<Field> fields = new HashSet<>();
-        fields.addAll(Arrays.asList(object.getClass().getDeclaredFields()));
-        Class<?> superclass = object.getClass().getSuperclass();
+    private static Type genericType(final PropertyDescriptor descriptor) {
+        if (descriptor.getReadMethod() != null) {
+            return descriptor.getReadMethod().getGenericReturnType();
+        }
+        return descriptor.getWriteMethod().getGenericParameterTypes()[0];
+    }
+
+    private static Set<Field> getAllFields(final Class<?> type) {
+        final Set<Field> fields = new LinkedHashSet<>();
+        fields.addAll(Arrays.asList(type.getDeclaredFields()));
+        Class<?> superclass = type.getSuperclass();
         while (superclass != null) {
             fields.addAll(Arrays.asList(superclass.getDeclaredFields()));
             superclass = superclass.getSuperclass();
@@ -93,23 +155,37 @@ class JsonApiRelationshipMap {
         return fields;
     }
 
-    public Set<Field> getAttributes() {
+    /**
+     * @return the property called {@code name}, whether or not it is backed by a field, or null if there is none
+     */
+    public JsonApiProperty getProperty(final String name) {
+        return properties.get(name);
+    }
+
+    /**
+     * @return every readable or writable property of the class
+     */
+    public Collection<JsonApiProperty> getProperties() {
+        return properties.values();
+    }
+
+    public List<JsonApiProperty> getAttributes() {
         return attributes;
     }
 
-    public Set<Field> getBelongsToRelationships() {
+    public List<JsonApiProperty> getBelongsToRelationships() {
         return belongsToRelationships;
     }
 
-    public Set<Field> getHasManyRelationships() {
+    public List<JsonApiProperty> getHasManyRelationships() {
         return hasManyRelationships;
     }
 
-    public Field getIdAttribute() {
+    public JsonApiProperty getIdAttribute() {
         return idAttribute;
     }
 
-    public Field getMeta() {
+    public JsonApiProperty getMeta() {
         return meta;
     }
-}
\ No newline at end of file
+}
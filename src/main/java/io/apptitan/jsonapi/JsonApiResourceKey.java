@@ -0,0 +1,46 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Identity of a resource within a document: its type and id.
+ */
+final class JsonApiResourceKey {
+    private final String type;
+    private final String id;
+    private final int hash;
+
+    JsonApiResourceKey(final String type, final String id) {
+        this.type = type;
+        this.id = id;
+        this.hash = (31 * type.hashCode()) + id.hashCode();
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof JsonApiResourceKey)) {
+            return false;
+        }
+        final JsonApiResourceKey other = (JsonApiResourceKey) obj;
+        return (hash == other.hash) && id.equals(other.id) && type.equals(other.type);
+    }
+
+    @Override
+    public String toString() {
+        return type + JsonApiConstants.PATH_SEPARATOR + id;
+    }
+}
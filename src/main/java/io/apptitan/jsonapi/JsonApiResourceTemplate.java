@@ -0,0 +1,266 @@
+package io.apptitan.jsonapi;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Version;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.google.common.base.CaseFormat;
+
+/**
+ * Everything about writing a resource class that does not depend on the instance being written: type name,
+ * attribute and relationship names in the serializer's path format, and link prefixes. Built once per class by
+ * {@link JsonApiSerializer} so writing an object only has to append its id.
+ */
+final class JsonApiResourceTemplate {
+
+    /**
+     * Upper bound on the distinct fieldsets compiled per type, as clients may request any combination
+     */
+    private static final int MAX_FIELD_MASKS = 256;
+
+    static final class Relationship {
+        private final JsonApiProperty property;
+        private final SerializedString name;
+        private final SerializedString type;
+        private final String relationshipSuffix;
+        private final String relatedSuffix;
+        private final boolean linkage;
+
+        Relationship(final JsonApiProperty property, final SerializedString name, final SerializedString type,
+                final String linkName, final boolean linkage) {
+            this.property = property;
+            this.name = name;
+            this.type = type;
+            this.linkage = linkage;
+            this.relationshipSuffix = JsonApiConstants.RELATIONSHIPS_PATH + linkName;
+            this.relatedSuffix = JsonApiConstants.PATH_SEPARATOR + linkName;
+        }
+
+        public JsonApiProperty getProperty() {
+            return property;
+        }
+
+        public SerializedString getName() {
+            return name;
+        }
+
+        /**
+         * @return the type of the related resource
+         */
+        public SerializedString getType() {
+            return type;
+        }
+
+        public String getRelationshipSuffix() {
+            return relationshipSuffix;
+        }
+
+        public String getRelatedSuffix() {
+            return relatedSuffix;
+        }
+
+        /**
+         * @return true if resource linkage is written along with the links
+         */
+        public boolean hasLinkage() {
+            return linkage;
+        }
+    }
+
+    private final JsonApiRelationshipMap relationshipMap;
+    private final SerializedString type;
+    private final String selfPrefix;
+    private final String collectionLink;
+    private final SerializedString[] attributeNames;
+    private final Relationship[] hasManyRelationships;
+    private final Relationship[] belongsToRelationships;
+    private final Map<String, Relationship> relationshipsByName = new HashMap<>();
+    private final Map<String, JsonApiProperty> attributesByName = new HashMap<>();
+    private final ConcurrentMap<Set<String>, JsonApiFieldMask> fieldMasks = new ConcurrentHashMap<>();
+    private final JsonApiFieldMask allFields;
+    private final JsonApiProperty versionAttribute;
+    private final boolean hasManyLinkage;
+
+    JsonApiResourceTemplate(
+            final Class<?> clazz,
+            final JsonApiRelationshipMap relationshipMap,
+            final String namespace,
+            final CaseFormat pathFormat) {
+        final ClassAnnotationMeta modelNames = new ClassAnnotationMeta(clazz, CaseFormat.UPPER_CAMEL, pathFormat);
+
+        this.relationshipMap = relationshipMap;
+        this.type = new SerializedString(modelNames.getPlural());
+        this.collectionLink = namespace + JsonApiConstants.PATH_SEPARATOR + modelNames.getPlural();
+        this.selfPrefix = collectionLink + JsonApiConstants.PATH_SEPARATOR;
+
+        final List<JsonApiProperty> attributes = relationshipMap.getAttributes();
+        this.attributeNames = new SerializedString[attributes.size()];
+        JsonApiProperty version = null;
+        for (int i = 0; i < attributeNames.length; i++) {
+            attributeNames[i] = name(pathFormat, attributes.get(i));
+            attributesByName.put(attributeNames[i].getValue(), attributes.get(i));
+            final Field field = attributes.get(i).getField();
+            if ((field != null) && field.isAnnotationPresent(Version.class)) {
+                version = attributes.get(i);
+            }
+        }
+        this.versionAttribute = version;
+
+        final List<JsonApiProperty> hasMany = relationshipMap.getHasManyRelationships();
+        this.hasManyRelationships = new Relationship[hasMany.size()];
+        boolean linkage = false;
+        for (int i = 0; i < hasManyRelationships.length; i++) {
+            final JsonApiProperty property = hasMany.get(i);
+            final ClassAnnotationMeta relationshipNames =
+                    new ClassAnnotationMeta(elementType(property), CaseFormat.UPPER_CAMEL, pathFormat);
+            hasManyRelationships[i] = new Relationship(property, name(pathFormat, property),
+                    new SerializedString(relationshipNames.getPlural()), relationshipNames.getPlural(),
+                    isEager(property));
+            relationshipsByName.put(hasManyRelationships[i].getName().getValue(), hasManyRelationships[i]);
+            linkage |= hasManyRelationships[i].hasLinkage();
+        }
+        this.hasManyLinkage = linkage;
+
+        final List<JsonApiProperty> belongsTo = relationshipMap.getBelongsToRelationships();
+        this.belongsToRelationships = new Relationship[belongsTo.size()];
+        for (int i = 0; i < belongsToRelationships.length; i++) {
+            final JsonApiProperty property = belongsTo.get(i);
+            final ClassAnnotationMeta relationshipNames =
+                    new ClassAnnotationMeta(property.getType(), CaseFormat.UPPER_CAMEL, pathFormat);
+            belongsToRelationships[i] = new Relationship(property, name(pathFormat, property),
+                    new SerializedString(relationshipNames.getPlural()), relationshipNames.getSingular(), true);
+            relationshipsByName.put(belongsToRelationships[i].getName().getValue(), belongsToRelationships[i]);
+        }
+
+        final Set<String> allNames = new HashSet<>(relationshipsByName.keySet());
+        for (final SerializedString attributeName : attributeNames) {
+            allNames.add(attributeName.getValue());
+        }
+        this.allFields = new JsonApiFieldMask(this, allNames);
+    }
+
+    private static SerializedString name(final CaseFormat pathFormat, final JsonApiProperty property) {
+        return new SerializedString(CaseFormat.LOWER_CAMEL.to(pathFormat, property.getName()));
+    }
+
+    /**
+     * @return true for a {@link HasMany} relationship that is not lazy
+     */
+    private static boolean isEager(final JsonApiProperty property) {
+        final HasMany hasMany = (property.getField() != null) ? property.getField().getAnnotation(HasMany.class) : null;
+        return (hasMany != null) && !hasMany.lazy();
+    }
+
+    /**
+     * @return the class of the elements of a collection property, or its own class
+     */
+    static Class<?> elementType(final JsonApiProperty property) {
+        final Type genericType = property.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            final Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if ((arguments.length > 0) && (arguments[0] instanceof Class)) {
+                return (Class<?>) arguments[0];
+            }
+        }
+        return property.getType();
+    }
+
+    public JsonApiRelationshipMap getRelationshipMap() {
+        return relationshipMap;
+    }
+
+    public SerializedString getType() {
+        return type;
+    }
+
+    /**
+     * @return the self link of the resource with the given id
+     */
+    public String selfLink(final String id) {
+        return selfPrefix.concat(id);
+    }
+
+    /**
+     * @return the link to the collection of resources of this type
+     */
+    public String collectionLink() {
+        return collectionLink;
+    }
+
+    /**
+     * @return names of {@link JsonApiRelationshipMap#getAttributes()}, in the same order
+     */
+    public SerializedString[] getAttributeNames() {
+        return attributeNames;
+    }
+
+    public Relationship[] getHasManyRelationships() {
+        return hasManyRelationships;
+    }
+
+    public Relationship[] getBelongsToRelationships() {
+        return belongsToRelationships;
+    }
+
+    /**
+     * @return a mask selecting every attribute and relationship
+     */
+    public JsonApiFieldMask getAllFields() {
+        return allFields;
+    }
+
+    /**
+     * @return {@code fields} compiled against this template, reusing an earlier compilation of the same fieldset.
+     *         Compilations are cached under a copy of {@code fields}, which the caller may go on changing
+     */
+    public JsonApiFieldMask fieldMask(final Set<String> fields) {
+        final JsonApiFieldMask mask = fieldMasks.get(fields);
+        if (mask != null) {
+            return mask;
+        }
+        if (fieldMasks.size() >= MAX_FIELD_MASKS) {
+            return new JsonApiFieldMask(this, fields);
+        }
+        return fieldMasks.computeIfAbsent(Collections.unmodifiableSet(new HashSet<>(fields)),
+                f -> new JsonApiFieldMask(this, f));
+    }
+
+    /**
+     * @return the attribute annotated with {@link Version}, or null if there is none
+     */
+    public JsonApiProperty getVersionAttribute() {
+        return versionAttribute;
+    }
+
+    /**
+     * @return true if resource linkage is written for any of the has many relationships
+     */
+    public boolean hasManyLinkage() {
+        return hasManyLinkage;
+    }
+
+    /**
+     * @return the attribute with the given name in the document, or null if there is none
+     */
+    public JsonApiProperty getAttribute(final String name) {
+        return attributesByName.get(name);
+    }
+
+    /**
+     * @return the hasMany or belongsTo relationship with the given name in the document, or null if there is none
+     */
+    public Relationship getRelationship(final String name) {
+        return relationshipsByName.get(name);
+    }
+}
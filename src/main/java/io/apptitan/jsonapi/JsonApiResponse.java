@@ -1,61 +1,324 @@
 package io.apptitan.jsonapi;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 
-@SuppressWarnings("serial")
-public class JsonApiResponse extends ConcurrentHashMap<String, Object> {
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-	private static final ConcurrentMap<String, Object> jsonApiVersion = new ConcurrentHashMap<>();
-	static {
-		jsonApiVersion.put("version", 1);
+/**
+ * An immutable top level document, written by
+ * {@link JsonApiResponseSerializer} with its members in the order of the
+ * specification and without the ones that are empty.
+ */
+@JsonSerialize(using = JsonApiResponseSerializer.class)
+public final class JsonApiResponse {
+
+	private final Object data;
+	private final Collection<Object> included;
+	private final Map<String, Object> meta;
+	private final int flushInterval;
+	private final JsonApiIncludeTree include;
+	private final JsonApiFieldsets fieldsets;
+	private final JsonApiPage page;
+	private final JsonApiIncludeLoader includeLoader;
+	private final Executor executor;
+	private final int chunkSize;
+
+	private JsonApiResponse(final Builder builder) {
+		this.data = builder.data;
+		this.included = (builder.includes == null) ? Collections.emptySet()
+				: Collections.unmodifiableSet(new LinkedHashSet<>(builder.includes));
+		this.meta = (builder.meta == null) ? Collections.emptyMap()
+				: Collections.unmodifiableMap(new LinkedHashMap<>(builder.meta));
+		this.flushInterval = builder.flushInterval;
+		this.include = (builder.includePaths == null) ? JsonApiIncludeTree.EMPTY
+				: JsonApiIncludeTree.parse(builder.includePaths, builder.maxIncludeDepth);
+		this.fieldsets = (builder.fields == null) ? null : new JsonApiFieldsets(copy(builder.fields));
+		this.page = builder.page;
+		this.includeLoader = builder.includeLoader;
+		this.executor = builder.executor;
+		this.chunkSize = builder.chunkSize;
+	}
+
+	/**
+	 * @return an unmodifiable copy of the fields by type, so the builder can
+	 *         go on changing them without changing this response
+	 */
+	private static Map<String, Set<String>> copy(final Map<String, Set<String>> fields) {
+		final Map<String, Set<String>> copy = new HashMap<>();
+		for (final Map.Entry<String, Set<String>> entry : fields.entrySet()) {
+			copy.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+		}
+		return Collections.unmodifiableMap(copy);
+	}
+
+	/**
+	 * @return the primary data, a single resource or a collection of them
+	 */
+	public Object getData() {
+		return data;
+	}
+
+	/**
+	 * @return resources included explicitly, in addition to those reached
+	 *         through the include paths
+	 */
+	public Collection<Object> getIncluded() {
+		return included;
+	}
+
+	public Map<String, Object> getMeta() {
+		return meta;
+	}
+
+	/**
+	 * @return number of resources written between flushes when data is a
+	 *         collection
+	 */
+	public int getFlushInterval() {
+		return flushInterval;
 	}
 
-	private JsonApiResponse() {
-		// Must use the builder
+	JsonApiIncludeTree getInclude() {
+		return include;
 	}
 
+	/**
+	 * @return the requested sparse fieldsets, or null to write every field
+	 */
+	JsonApiFieldsets getFieldsets() {
+		return fieldsets;
+	}
+
+	/**
+	 * @return the page of the collection in data, or null if it is not
+	 *         paginated
+	 */
+	JsonApiPage getPage() {
+		return page;
+	}
+
+	/**
+	 * @return loader of the unloaded resources reached through the include
+	 *         paths, or null to read them as they are reached
+	 */
+	JsonApiIncludeLoader getIncludeLoader() {
+		return includeLoader;
+	}
+
+	/**
+	 * @return executor rendering chunks of the primary data concurrently,
+	 *         or null to write it on the calling thread
+	 */
+	Executor getExecutor() {
+		return executor;
+	}
+
+	int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Collections are only allocated for the parts of the document that are
+	 * used, most responses being data alone.
+	 */
 	public static class Builder {
-		private final Set<Object> includes = new HashSet<Object>();
-		private final ConcurrentMap<String, Object> meta = new ConcurrentHashMap<String, Object>();
+		private Set<Object> includes = null;
+		private List<String> includePaths = null;
+		private Map<String, Set<String>> fields = null;
+		private Map<String, Object> meta = null;
 		private Object data = null;
+		private JsonApiPage page = null;
+		private JsonApiIncludeLoader includeLoader = null;
+		private Executor executor = null;
+		private int chunkSize = JsonApiCollections.DEFAULT_CHUNK_SIZE;
+		private int flushInterval = JsonApiCollections.DEFAULT_FLUSH_INTERVAL;
+		private int maxIncludeDepth = JsonApiIncludeTree.DEFAULT_MAX_DEPTH;
 
+		/**
+		 * @param data
+		 *            a single resource, or a {@link java.util.Collection},
+		 *            {@link java.util.Iterator}, {@link java.util.stream.Stream}
+		 *            or array of resources. Iterators and streams are read
+		 *            lazily while the response is written
+		 */
 		public Builder(final Object data) {
 			this.data = data;
 		}
 
+		/**
+		 * Flush the output after every {@code resources} resources of a
+		 * collection, or never flush early if {@code resources} is 0
+		 */
+		public Builder flushEvery(int resources) {
+			this.flushInterval = resources;
+			return this;
+		}
+
+		/**
+		 * Write at most one page of the collection in data, followed by
+		 * {@code first}, {@code prev}, {@code next} and {@code last} links
+		 * with cursors of the first and last resources written. Data must
+		 * hold the page selected as described by {@link JsonApiPage}, with
+		 * up to {@link JsonApiPage#getLimit()} resources.
+		 */
+		public Builder page(JsonApiPage page) {
+			this.page = page;
+			return this;
+		}
+
+		/**
+		 * Before the response is written, walk its include paths and load
+		 * the related resources that are not loaded, such as uninitialized
+		 * JPA proxies, with one call to {@code loader} per class and level
+		 * of the include paths. The classes of a level are loaded
+		 * concurrently on {@code executor}, which may run each load on a
+		 * virtual thread. Only applies when data is a single resource, a
+		 * {@link java.util.Collection} or an array, as iterators and
+		 * streams can only be read once.
+		 */
+		public Builder includeLoader(JsonApiBatchLoader loader, Executor executor) {
+			this.includeLoader = new JsonApiIncludeLoader(loader, executor);
+			return this;
+		}
+
+		/**
+		 * Load unloaded included resources with {@code loader} on the
+		 * thread writing the response, see
+		 * {@link #includeLoader(JsonApiBatchLoader, Executor)}
+		 */
+		public Builder includeLoader(JsonApiBatchLoader loader) {
+			return includeLoader(loader, Runnable::run);
+		}
+
+		/**
+		 * Render a {@link java.util.List} or array of primary data in
+		 * chunks of {@code chunkSize} resources concurrently on
+		 * {@code executor}, such as a
+		 * {@link java.util.concurrent.ForkJoinPool}, and copy the chunks to
+		 * the output in order. Only applies when the response is written
+		 * without indentation to an {@link java.io.OutputStream} by an
+		 * {@link com.fasterxml.jackson.databind.ObjectMapper}, is not
+		 * paginated and has more than one chunk of data; otherwise data is
+		 * written on the calling thread. The output is flushed after chunks
+		 * rather than every {@link #flushEvery(int)} resources.
+		 * <p>
+		 * Resources and the resources they include are read on the
+		 * executor's threads, so data must be fully initialized or detached
+		 * from the persistence session it was loaded in, which is not
+		 * thread safe. Data that is not initialized according to
+		 * {@link JsonApiIdentifierResolver#isInitialized(Object)}, along
+		 * the include paths, is written on the calling thread instead. If
+		 * a chunk fails the chunks not started yet are cancelled.
+		 */
+		public Builder parallel(Executor executor, int chunkSize) {
+			if (chunkSize < 1) {
+				throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+			}
+			this.executor = executor;
+			this.chunkSize = chunkSize;
+			return this;
+		}
+
+		/**
+		 * Render primary data concurrently in chunks of 1000 resources, see
+		 * {@link #parallel(Executor, int)}
+		 */
+		public Builder parallel(Executor executor) {
+			return parallel(executor, JsonApiCollections.DEFAULT_CHUNK_SIZE);
+		}
+
 		public Builder meta(String key, Object value) {
-			meta.put(key, value);
+			meta().put(key, value);
 			return this;
 		}
 
-		public Builder meta(ConcurrentMap<String, Object> meta) {
-			meta.putAll(meta);
+		public Builder meta(Map<String, ?> meta) {
+			meta().putAll(meta);
 			return this;
 		}
 
+		private Map<String, Object> meta() {
+			if (meta == null) {
+				meta = new LinkedHashMap<>();
+			}
+			return meta;
+		}
+
 		public Builder include(Set<Object> includes) {
-			this.includes.addAll(includes);
+			includes().addAll(includes);
 			return this;
 		}
 
 		public Builder include(Object... objects) {
-			Set<Object> set = new HashSet<>(Arrays.asList(objects));
-			this.includes.addAll(set);
+			includes().addAll(Arrays.asList(objects));
+			return this;
+		}
+
+		private Set<Object> includes() {
+			if (includes == null) {
+				includes = new LinkedHashSet<>();
+			}
+			return includes;
+		}
+
+		/**
+		 * Include the resources reached through the given relationship
+		 * paths, such as {@code "author"} and {@code "comments.author"}, in
+		 * the response. Each path may also be a comma separated list as sent
+		 * in the {@code include} query parameter. Each resource is written
+		 * once, however many paths reach it.
+		 */
+		public Builder includePaths(String... paths) {
+			if (includePaths == null) {
+				includePaths = new ArrayList<>();
+			}
+			includePaths.addAll(Arrays.asList(paths));
+			return this;
+		}
+
+		/**
+		 * Follow at most {@code depth} relationships along each include
+		 * path, ignoring the rest of longer paths, or every relationship if
+		 * {@code depth} is 0. Defaults to 5. Resources beyond the limit are
+		 * only written as resource linkage.
+		 */
+		public Builder maxIncludeDepth(int depth) {
+			this.maxIncludeDepth = depth;
+			return this;
+		}
+
+		/**
+		 * Only write the named attributes and relationships of resources of
+		 * the given type, as requested by {@code fields[type]=a,b}. Each
+		 * name may also be a comma separated list. Fields that are not
+		 * requested are never read from the resource.
+		 */
+		public Builder fields(String type, String... names) {
+			if (fields == null) {
+				fields = new HashMap<>();
+			}
+			Set<String> typeFields = this.fields.computeIfAbsent(type, t -> new HashSet<String>());
+			for (String list : names) {
+				for (String name : list.split(",")) {
+					typeFields.add(name.trim());
+				}
+			}
 			return this;
 		}
 
 		public JsonApiResponse build() {
-			JsonApiResponse response = new JsonApiResponse();
-			response.put("jsonapi", jsonApiVersion);
-			response.put("data", this.data);
-			// response.put("links", "TODO");
-			response.put("included", this.includes);
-			response.put("meta", this.meta);
-			return response;
+			return new JsonApiResponse(this);
 		}
 	}
 }
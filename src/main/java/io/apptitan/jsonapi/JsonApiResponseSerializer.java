@@ -0,0 +1,643 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.cfg.ContextAttributes;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+
+/**
+ * Writes a {@link JsonApiResponse}. A collection of primary data is written one resource at a time through the
+ * serializer registered for each resource's class, so it never has to be held in memory as a whole.
+ * <p>
+ * Resources reached through the response's include paths are collected while the primary data is written and
+ * then written once each in {@code included}, skipping any that are already part of the primary data. Sparse
+ * fieldsets are made available to every resource serializer as a {@link SerializerProvider} attribute.
+ * <p>
+ * With an include loader, the resources to include that are not loaded are loaded in batches before anything is
+ * written, and written in place of the ones reached.
+ * <p>
+ * When the response is paginated, at most one page of the collection is written, and the cursors of its first and
+ * last resources are written in {@code links} once the data has been written.
+ * <p>
+ * A list of primary data may instead be split into chunks rendered concurrently, each to its own bytes with its
+ * own provider and document state, which are copied to the output in order and merged into the document's.
+ */
+public final class JsonApiResponseSerializer extends JsonSerializer<JsonApiResponse> {
+
+    private static final SerializableString JSONAPI_NAME = new SerializedString("jsonapi");
+    private static final SerializableString INCLUDED_NAME = new SerializedString("included");
+    // Every response has the same version object, so it is written pre-encoded
+    private static final SerializableString JSONAPI_VERSION = new SerializedString("{\"version\":1}");
+    private static final String PAGE = "page";
+    private static final String FIRST = "first";
+    private static final String PREV = "prev";
+    private static final String NEXT = "next";
+    private static final String LAST = "last";
+
+    /**
+     * State of a single response while it is being written
+     */
+    private static final class Document {
+        private final JsonApiIncludeTree include;
+        private final JsonApiGraph graph = new JsonApiGraph();
+        private final Set<Object> primary = new HashSet<>();
+        private final boolean compound;
+        private final JsonApiPage page;
+        private Object first;
+        private Object last;
+        private boolean more;
+        private JsonApiListener listener = JsonApiListener.NONE;
+        private int resources;
+        private int includedWritten;
+
+        Document(final JsonApiIncludeTree include, final boolean compound, final JsonApiPage page) {
+            this.include = include;
+            this.compound = compound;
+            this.page = page;
+        }
+    }
+
+    /**
+     * Primary data rendered apart from the document, as a JSON array, with the state of its rendering
+     */
+    private static final class Chunk {
+        private final Document document;
+        private final byte[] json;
+
+        Chunk(final Document document, final byte[] json) {
+            this.document = document;
+            this.json = json;
+        }
+    }
+
+    /**
+     * The attributes of the provider rendering a chunk. Those the chunk sets are its own, any other is read from the
+     * provider writing the document, so that the chunk sees every attribute of the call whoever set it
+     */
+    private static final class ChunkAttributes extends ContextAttributes {
+        private final SerializerProvider parent;
+        private final Map<Object, Object> perCall = new HashMap<>();
+
+        ChunkAttributes(final SerializerProvider parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public Object getAttribute(final Object key) {
+            return perCall.containsKey(key) ? perCall.get(key) : parent.getAttribute(key);
+        }
+
+        @Override
+        public ContextAttributes withPerCallAttribute(final Object key, final Object value) {
+            perCall.put(key, value);
+            return this;
+        }
+
+        // Shared attributes are changed on mappers and writers, never while a chunk is rendered
+
+        @Override
+        public ContextAttributes withSharedAttribute(final Object key, final Object value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ContextAttributes withSharedAttributes(final Map<Object, Object> attributes) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ContextAttributes withoutSharedAttribute(final Object key) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Reads at most the size of a page from the data, noting whether there was more
+     */
+    private static final class PageIterator implements Iterator<Object> {
+        private final Iterator<?> resources;
+        private final Document document;
+        private int remaining;
+
+        PageIterator(final Iterator<?> resources, final Document document) {
+            this.resources = resources;
+            this.document = document;
+            this.remaining = document.page.getSize();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (remaining == 0) {
+                document.more = resources.hasNext();
+                return false;
+            }
+            return resources.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            remaining--;
+            return resources.next();
+        }
+    }
+
+    @Override
+    public void serialize(
+            final JsonApiResponse response,
+            final JsonGenerator jgen,
+            final SerializerProvider provider) throws IOException, JsonProcessingException {
+        final long start = System.nanoTime();
+        final Document document = new Document(response.getInclude(),
+                !response.getIncluded().isEmpty() || !response.getInclude().isEmpty(), response.getPage());
+
+        final Object previousFieldsets = provider.getAttribute(JsonApiFieldsets.class);
+        final Object previousGraph = provider.getAttribute(JsonApiGraph.class);
+        if (response.getFieldsets() != null) {
+            provider.setAttribute(JsonApiFieldsets.class, response.getFieldsets());
+        }
+        provider.setAttribute(JsonApiGraph.class, document.graph);
+        try {
+            if ((response.getIncludeLoader() != null) && !document.include.isEmpty() && (response.getData() != null)
+                    && JsonApiCollections.isRepeatable(response.getData())) {
+                document.graph.setLoaded(
+                        response.getIncludeLoader().load(response.getData(), document.include, provider));
+            }
+            writeDocument(response, jgen, provider, document);
+        } finally {
+            provider.setAttribute(JsonApiFieldsets.class, previousFieldsets);
+            provider.setAttribute(JsonApiGraph.class, previousGraph);
+        }
+
+        // Reported to the listener of the serializer that wrote the primary data
+        if (document.listener != JsonApiListener.NONE) {
+            document.listener.documentWritten(document.resources, document.includedWritten, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes the members in the order of the specification, leaving out empty ones
+     */
+    private static void writeDocument(
+            final JsonApiResponse response,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        jgen.writeStartObject();
+        jgen.writeFieldName(JSONAPI_NAME);
+        jgen.writeRawValue(JSONAPI_VERSION);
+
+        jgen.writeFieldName(JsonApiConstants.DATA_NAME);
+        final List<?> chunked = chunked(response, jgen, provider, document);
+        if (chunked != null) {
+            writeChunks(chunked, response, jgen, provider, document);
+        } else {
+            writeData(response.getData(), jgen, provider, response.getFlushInterval(), document);
+        }
+
+        if (document.compound) {
+            for (final Object resource : response.getIncluded()) {
+                document.graph.getIncluded().putIfAbsent(key(resource, provider), resource);
+            }
+            writeIncluded(jgen, provider, document);
+        }
+
+        if (!response.getMeta().isEmpty() || (document.page != null)) {
+            jgen.writeFieldName(JsonApiConstants.META_NAME);
+            writeMeta(response.getMeta(), jgen, provider, document);
+        }
+
+        if (document.page != null) {
+            jgen.writeFieldName(JsonApiConstants.LINKS_NAME);
+            writePageLinks(jgen, provider, document);
+        }
+        jgen.writeEndObject();
+    }
+
+    private static void writeData(
+            final Object data,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final int flushInterval,
+            final Document document) throws IOException {
+        if (!JsonApiCollections.isCollection(data)) {
+            if (data == null) {
+                provider.defaultSerializeNull(jgen);
+            } else {
+                writePrimary(data, provider.findValueSerializer(data.getClass(), null), jgen, provider, document);
+            }
+            return;
+        }
+
+        final Iterator<?> resources = (document.page == null)
+                ? JsonApiCollections.iterator(data) : page(JsonApiCollections.iterator(data), document);
+        try {
+            jgen.writeStartArray();
+            Class<?> lastClass = null;
+            JsonSerializer<Object> lastSerializer = null;
+            int written = 0;
+            while (resources.hasNext()) {
+                final Object resource = resources.next();
+                if (resource == null) {
+                    provider.defaultSerializeNull(jgen);
+                } else {
+                    // Collections are nearly always of one class, so skip the provider lookup when it repeats
+                    if (resource.getClass() != lastClass) {
+                        lastClass = resource.getClass();
+                        lastSerializer = provider.findValueSerializer(lastClass, null);
+                    }
+                    writePrimary(resource, lastSerializer, jgen, provider, document);
+                    if (document.first == null) {
+                        document.first = resource;
+                    }
+                    document.last = resource;
+                }
+                JsonApiCollections.flushIfDue(jgen, ++written, flushInterval);
+            }
+            jgen.writeEndArray();
+        } finally {
+            JsonApiCollections.close(data);
+        }
+    }
+
+    /**
+     * @return the primary data as a list to write in chunks, or null if it is written on the calling thread
+     */
+    private static List<?> chunked(
+            final JsonApiResponse response,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        // Chunks are rendered as UTF-8 bytes, so they can only be copied to a generator writing to a stream
+        if ((response.getExecutor() == null) || (document.page != null)
+                || !(jgen.getOutputTarget() instanceof OutputStream) || !(jgen.getCodec() instanceof ObjectMapper)
+                || !(provider instanceof DefaultSerializerProvider) || (jgen.getPrettyPrinter() != null)) {
+            return null;
+        }
+        final Object data = response.getData();
+        final List<?> resources;
+        if (data instanceof Object[]) {
+            resources = Arrays.asList((Object[]) data);
+        } else if ((data instanceof List) && (data instanceof RandomAccess)) {
+            resources = (List<?>) data;
+        } else {
+            return null;
+        }
+        return (resources.size() > response.getChunkSize()) && isLoaded(resources, provider, document) ? resources
+                : null;
+    }
+
+    /**
+     * @return false if any of {@code resources}, or of the resources they include, has not been loaded. Loading
+     *         one from another thread would share the session it belongs to, which is not thread safe.
+     */
+    private static boolean isLoaded(
+            final List<?> resources,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        final JsonApiIncludeTree include = document.compound ? document.include : JsonApiIncludeTree.EMPTY;
+        Class<?> lastClass = null;
+        JsonSerializer<Object> lastSerializer = null;
+        try {
+            for (final Object resource : resources) {
+                if (resource == null) {
+                    continue;
+                }
+                if (resource.getClass() != lastClass) {
+                    lastClass = resource.getClass();
+                    lastSerializer = provider.findValueSerializer(lastClass, null);
+                }
+                if ((lastSerializer instanceof JsonApiSerializer)
+                        && !((JsonApiSerializer) lastSerializer).isLoaded(resource, include)) {
+                    return false;
+                }
+            }
+        } catch (final ReflectiveOperationException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not read relationship", e);
+        }
+        return true;
+    }
+
+    /**
+     * Renders the chunks of {@code resources} on the executor of the response, up to a few chunks per processor
+     * ahead of the one being copied to the output so that a large collection is not held as bytes all at once
+     */
+    private static void writeChunks(
+            final List<?> resources,
+            final JsonApiResponse response,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        final ObjectMapper mapper = (ObjectMapper) jgen.getCodec();
+        final int chunkSize = response.getChunkSize();
+        final int chunks = ((resources.size() - 1) / chunkSize) + 1;
+        final int ahead = 2 * Runtime.getRuntime().availableProcessors();
+        final Deque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+
+        jgen.writeStartArray();
+        // What the generator holds goes out before the chunks are copied after it
+        jgen.flush();
+        final OutputStream out = (OutputStream) jgen.getOutputTarget();
+        int submitted = 0;
+        try {
+            for (int i = 0; i < chunks; i++) {
+                while ((submitted < chunks) && (pending.size() < ahead)) {
+                    final List<?> chunk = resources.subList(submitted * chunkSize,
+                            Math.min(resources.size(), (submitted + 1) * chunkSize));
+                    // Providers hold per call state, so each chunk gets its own, created here rather than concurrently
+                    final DefaultSerializerProvider chunkProvider = ((DefaultSerializerProvider) provider)
+                            .createInstance(provider.getConfig().with(new ChunkAttributes(provider)),
+                                    mapper.getSerializerFactory());
+                    pending.add(CompletableFuture.supplyAsync(
+                            () -> render(chunk, mapper.getFactory(), jgen, chunkProvider, document),
+                            response.getExecutor()));
+                    submitted++;
+                }
+                final Chunk chunk = join(pending.poll());
+                if (i > 0) {
+                    out.write(',');
+                }
+                // Less the brackets of the array the chunk was rendered as
+                out.write(chunk.json, 1, chunk.json.length - 2);
+                merge(chunk.document, document);
+                if (response.getFlushInterval() > 0) {
+                    out.flush();
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // The chunks not started yet would only be thrown away
+            for (final CompletableFuture<Chunk> chunk : pending) {
+                chunk.cancel(false);
+            }
+            throw e;
+        }
+        jgen.writeEndArray();
+    }
+
+    private static Chunk render(
+            final List<?> resources,
+            final JsonFactory factory,
+            final JsonGenerator parent,
+            final DefaultSerializerProvider provider,
+            final Document parentDocument) {
+        final Document document = new Document(parentDocument.include, parentDocument.compound, null);
+        document.graph.setLoaded(parentDocument.graph.getLoaded());
+        provider.setAttribute(JsonApiGraph.class, document.graph);
+        final ByteArrayBuilder bytes = new ByteArrayBuilder(factory._getBufferRecycler());
+        try {
+            try (final JsonGenerator jgen = factory.createGenerator(bytes, JsonEncoding.UTF8)) {
+                jgen.setFeatureMask(parent.getFeatureMask());
+                jgen.setCharacterEscapes(parent.getCharacterEscapes());
+                jgen.writeStartArray();
+                Class<?> lastClass = null;
+                JsonSerializer<Object> lastSerializer = null;
+                for (final Object resource : resources) {
+                    if (resource == null) {
+                        provider.defaultSerializeNull(jgen);
+                        continue;
+                    }
+                    if (resource.getClass() != lastClass) {
+                        lastClass = resource.getClass();
+                        lastSerializer = provider.findValueSerializer(lastClass, null);
+                    }
+                    writePrimary(resource, lastSerializer, jgen, provider, document);
+                }
+                jgen.writeEndArray();
+            }
+            return new Chunk(document, bytes.toByteArray());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            bytes.release();
+        }
+    }
+
+    private static Chunk join(final CompletableFuture<Chunk> chunk) throws IOException {
+        try {
+            return chunk.join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Adds what was written in a chunk to the document, resources to include keeping the order they were reached in
+     */
+    private static void merge(final Document chunk, final Document document) {
+        document.resources += chunk.resources;
+        if (document.listener == JsonApiListener.NONE) {
+            document.listener = chunk.listener;
+        }
+        document.primary.addAll(chunk.primary);
+        for (final Map.Entry<Object, Object> entry : chunk.graph.getIncluded().entrySet()) {
+            document.graph.getIncluded().putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return the resources of the page in {@code resources}. A page before its cursor is given nearest to the
+     *         cursor first, so it is read and reversed into sort order.
+     */
+    private static Iterator<?> page(final Iterator<?> resources, final Document document) {
+        if (!document.page.isBefore()) {
+            return new PageIterator(resources, document);
+        }
+        final List<Object> page = new ArrayList<>(document.page.getSize());
+        final PageIterator nearestFirst = new PageIterator(resources, document);
+        while (nearestFirst.hasNext()) {
+            page.add(nearestFirst.next());
+        }
+        Collections.reverse(page);
+        return page.iterator();
+    }
+
+    private static void writePageLinks(
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        final JsonApiPage page = document.page;
+        final JsonSerializer<Object> serializer = provider.findValueSerializer(page.getType(), null);
+        if (!(serializer instanceof JsonApiSerializer)) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not write page links",
+                    new IllegalArgumentException(page.getType().getName() + " is not written as a resource"));
+        }
+        final JsonApiSerializer resourceSerializer = (JsonApiSerializer) serializer;
+
+        final StringBuilder first = new StringBuilder(resourceSerializer.collectionLink(page.getType()))
+                .append("?page[size]=").append(page.getSize());
+        if (!page.getSort().isEmpty()) {
+            first.append("&sort=").append(String.join(",", page.getSort()));
+        }
+        final String firstLink = first.toString();
+
+        // There is a previous page before a cursor when more than a page was found, and always after a cursor.
+        // Likewise for the next page.
+        final boolean hasPrev = page.isBefore() ? document.more : !page.isFirst();
+        final boolean hasNext = page.isBefore() || document.more;
+
+        jgen.writeStartObject();
+        jgen.writeStringField(FIRST, firstLink);
+        jgen.writeFieldName(PREV);
+        writePageLink(firstLink, "&page[before]=", hasPrev ? document.first : null, resourceSerializer, jgen,
+                provider, page);
+        jgen.writeFieldName(NEXT);
+        writePageLink(firstLink, "&page[after]=", hasNext ? document.last : null, resourceSerializer, jgen,
+                provider, page);
+        // Finding the last page would mean counting the collection, which is what cursors avoid
+        jgen.writeFieldName(LAST);
+        jgen.writeNull();
+        jgen.writeEndObject();
+    }
+
+    private static void writePageLink(
+            final String firstLink,
+            final String parameter,
+            final Object resource,
+            final JsonApiSerializer serializer,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final JsonApiPage page) throws IOException {
+        if (resource == null) {
+            jgen.writeNull();
+            return;
+        }
+        try {
+            jgen.writeString(firstLink + parameter + serializer.cursor(resource, page.getSort(), provider));
+        } catch (final ReflectiveOperationException e) {
+            throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not read cursor", e);
+        }
+    }
+
+    private static void writeMeta(
+            final Map<String, Object> meta,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        jgen.writeStartObject();
+        for (final Map.Entry<String, Object> entry : meta.entrySet()) {
+            if ((document.page == null) || !PAGE.equals(entry.getKey())) {
+                jgen.writeFieldName(entry.getKey());
+                provider.defaultSerializeValue(entry.getValue(), jgen);
+            }
+        }
+        if (document.page != null) {
+            jgen.writeObjectFieldStart(PAGE);
+            jgen.writeNumberField(JsonApiPage.SIZE, document.page.getSize());
+            jgen.writeBooleanField(JsonApiPage.MORE, document.more);
+            jgen.writeEndObject();
+        }
+        jgen.writeEndObject();
+    }
+
+    private static void writePrimary(
+            final Object resource,
+            final JsonSerializer<Object> serializer,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        // Include paths are followed from the relationships read while writing, and from the rest afterwards
+        final boolean collecting = document.compound && !document.include.isEmpty();
+        if (collecting) {
+            document.graph.collectWhileWriting(document.include);
+        }
+        try {
+            serializer.serialize(resource, jgen, provider);
+        } finally {
+            if (collecting) {
+                document.graph.collectWhileWriting(JsonApiIncludeTree.EMPTY);
+            }
+        }
+        document.resources++;
+        if (!(serializer instanceof JsonApiSerializer)) {
+            return;
+        }
+
+        final JsonApiSerializer resourceSerializer = (JsonApiSerializer) serializer;
+        if (document.listener == JsonApiListener.NONE) {
+            document.listener = resourceSerializer.listener();
+        }
+        if (!document.compound) {
+            return;
+        }
+        try {
+            document.primary.add(resourceSerializer.resourceKey(resource));
+        } catch (final ReflectiveOperationException e) {
+            throw JsonApiSerializer.unidentifiedResource(e);
+        }
+        if (!document.include.isEmpty()) {
+            try {
+                resourceSerializer.collectRemainingIncluded(resource, document.include, document.graph, provider);
+            } catch (final ReflectiveOperationException e) {
+                throw JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR,
+                        "Could not read included resources", e);
+            }
+        }
+    }
+
+    private static void writeIncluded(
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final Document document) throws IOException {
+        for (final Map.Entry<Object, Object> entry : document.graph.getIncluded().entrySet()) {
+            if (!document.primary.contains(entry.getKey())) {
+                if (document.includedWritten++ == 0) {
+                    jgen.writeFieldName(INCLUDED_NAME);
+                    jgen.writeStartArray();
+                }
+                provider.defaultSerializeValue(entry.getValue(), jgen);
+            }
+        }
+        if (document.includedWritten > 0) {
+            jgen.writeEndArray();
+        }
+    }
+
+    /**
+     * @return the type and id of a resource written by a {@link JsonApiSerializer}, otherwise the resource itself
+     */
+    private static Object key(final Object resource, final SerializerProvider provider) throws IOException {
+        if (resource == null) {
+            return null;
+        }
+        final JsonSerializer<Object> serializer = provider.findValueSerializer(resource.getClass(), null);
+        if (serializer instanceof JsonApiSerializer) {
+            try {
+                return ((JsonApiSerializer) serializer).resourceKey(resource);
+            } catch (final ReflectiveOperationException e) {
+                throw JsonApiSerializer.unidentifiedResource(e);
+            }
+        }
+        return resource;
+    }
+}
@@ -1,74 +1,125 @@
 package io.apptitan.jsonapi;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.ParameterizedType;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import javax.persistence.Id;
-import javax.persistence.ManyToMany;
-import javax.persistence.ManyToOne;
-import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
-
-import org.apache.commons.beanutils.PropertyUtils;
-import org.atteo.evo.inflector.English;
-
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
 import com.google.common.base.CaseFormat;
 
-class ClassAnnotationMeta {
-    private final String plural;
-    private final String singular;
-
-    public ClassAnnotationMeta(final Class<?> clazz, final CaseFormat fromFormat, final CaseFormat toFormat) {
-        String singular = fromFormat.to(toFormat, clazz.getSimpleName());
-        final String plural = English.plural(singular);
+public class JsonApiSerializer extends JsonSerializer<Object> {
 
-        final JsonApiResource[] annotations = clazz.getAnnotationsByType(JsonApiResource.class);
-        if (annotations.length > 0) {
-            final JsonApiResource jsonApiResourceAnnotation = annotations[0];
+    // Writes fragments when the generator has no codec to take a factory from
+    private static final JsonFactory FRAGMENT_FACTORY = new JsonFactory();
 
-            if (jsonApiResourceAnnotation.singular() != null) {
-                singular = jsonApiResourceAnnotation.singular();
-            }
+    private volatile JsonApiRelationshipCache relationshipCache;
 
-            if (jsonApiResourceAnnotation.plural() != null) {
-                singular = jsonApiResourceAnnotation.plural();
-            }
+    private final ClassValue<JsonApiResourceTemplate> templates = new ClassValue<JsonApiResourceTemplate>() {
+        @Override
+        protected JsonApiResourceTemplate computeValue(final Class<?> type) {
+            final long start = System.nanoTime();
+            final JsonApiResourceTemplate template =
+                    new JsonApiResourceTemplate(type, relationshipCache().get(type), namespace(), pathFormat());
+            listener().metadataBuilt(type, System.nanoTime() - start);
+            return template;
         }
+    };
 
-        this.singular = singular;
-        this.plural = plural;
+    protected List<Class<? extends Annotation>> belongsToAnnotations() {
+        return JsonApiRelationshipMap.BELONGS_TO_ANNOTATIONS;
     }
 
-    public String getPlural() {
-        return plural;
+    protected List<Class<? extends Annotation>> hasManyAnnotations() {
+        return JsonApiRelationshipMap.HAS_MANY_ANNOTATIONS;
     }
 
-    public String getSingular() {
-        return singular;
+    protected List<Class<? extends Annotation>> idAnnotations() {
+        return JsonApiRelationshipMap.ID_ANNOTATIONS;
     }
-}
 
-public class JsonApiSerializer extends JsonSerializer<Object> {
+    /**
+     * @return strategy used to read resource properties. Defaults to {@link JsonApiAccessors#METHOD_HANDLES}
+     */
+    protected JsonApiAccessorStrategy accessorStrategy() {
+        return JsonApiAccessors.METHOD_HANDLES;
+    }
 
-    protected List<Class<? extends Annotation>> belongsToAnnotations() {
-        return Arrays.asList(BelongsTo.class, ManyToOne.class, OneToOne.class, HasMany.class);
+    /**
+     * @return resolver used to read the ids of related resources without loading them. Defaults to
+     *         {@link JsonApiIdentifierResolvers#HIBERNATE_PROXIES}
+     */
+    protected JsonApiIdentifierResolver identifierResolver() {
+        return JsonApiIdentifierResolvers.HIBERNATE_PROXIES;
     }
 
-    protected List<Class<? extends Annotation>> hasManyAnnotations() {
-        return Arrays.asList(HasMany.class, OneToMany.class, ManyToMany.class, BelongsTo.class);
+    /**
+     * @return most resource identifiers written in the linkage of a {@link HasMany#lazy() non lazy} relationship,
+     *         or 0 for no limit. The rest of the relationship is not read. When a relationship holding a
+     *         {@link Collection} has more, its size is written as {@code meta.count}. Defaults to 0
+     */
+    protected int maxLinkage() {
+        return 0;
     }
 
-    protected List<Class<? extends Annotation>> idAnnotations() {
-        return Arrays.asList(JsonApiId.class, Id.class);
+    /**
+     * @return what happens when an attribute, relationship or meta member cannot be read. Defaults to
+     *         {@link JsonApiErrorPolicy#STRICT}
+     */
+    protected JsonApiErrorPolicy errorPolicy() {
+        return JsonApiErrorPolicy.STRICT;
+    }
+
+    /**
+     * Called with the member left out of a resource when {@link #errorPolicy()} is
+     * {@link JsonApiErrorPolicy#LENIENT}. Does nothing by default
+     */
+    protected void memberSkipped(final JsonApiException exception) {
+        // Nothing to do
+    }
+
+    /**
+     * @return cache of resources already written, or null to write every resource in full. Defaults to null.
+     *         Resources are only cached when {@link #fragmentVersion(Object)} returns a version, all their fields
+     *         are written, and {@link #errorPolicy()} is strict so that a fragment is never missing a member. As the
+     *         version does not cover other resources, resources whose class writes has many linkage, or that hold
+     *         resources written inside them, are never cached.
+     */
+    protected JsonApiFragmentCache fragmentCache() {
+        return null;
+    }
+
+    /**
+     * @return the version of {@code object}, whose fragment is reused while its version is unchanged, or null to
+     *         never cache it. Defaults to the value of the attribute annotated with {@link javax.persistence.Version}.
+     *         Reference data that only changes on deployment may return a constant. It only needs to cover the
+     *         attributes and belongs to linkage of {@code object}, see {@link #fragmentCache()}.
+     */
+    protected Object fragmentVersion(final Object object) throws ReflectiveOperationException {
+        final JsonApiProperty version = template(object).getVersionAttribute();
+        return (version != null) ? version.get(object) : null;
+    }
+
+    /**
+     * @return listener measuring the resources written, and the {@link JsonApiResponse}s whose primary data they are
+     *         part of. Defaults to {@link JsonApiListener#NONE}
+     */
+    protected JsonApiListener listener() {
+        return JsonApiListener.NONE;
     }
 
     /**
@@ -78,6 +129,14 @@ public class JsonApiSerializer extends JsonSerializer<Object> {
         return "/jsonapi";
     }
 
+    /**
+     * @return number of resources written between flushes of the generator when serializing a collection, or 0 to
+     *         leave flushing to the generator. Defaults to 1000
+     */
+    protected int flushInterval() {
+        return JsonApiCollections.DEFAULT_FLUSH_INTERVAL;
+    }
+
     /**
      * @return url format to use when serializing. Defaults to
      *         {@link CaseFormat#LOWER_HYPHEN}
@@ -91,134 +150,650 @@ public class JsonApiSerializer extends JsonSerializer<Object> {
             final Object object,
             final JsonGenerator jgen,
             final SerializerProvider provider) throws IOException, JsonProcessingException {
+        if (JsonApiCollections.isCollection(object)) {
+            writeCollectionAsJSONAPI(object, jgen, provider);
+            return;
+        }
+        try {
+            writeResource(object, jgen, provider);
+        } catch (final ReflectiveOperationException e) {
+            throw unidentifiedResource(e);
+        }
+    }
+
+    static JsonApiException unidentifiedResource(final ReflectiveOperationException cause) {
+        return JsonApiErrors.resourceError(JsonApiErrors.INTERNAL_SERVER_ERROR, "Could not identify resource", cause);
+    }
+
+    /**
+     * Writes a {@link Iterable}, {@link java.util.Iterator}, {@link java.util.stream.Stream} or array of resources
+     * as an array, one resource at a time, flushing the generator every {@link #flushInterval()} resources.
+     */
+    private void writeCollectionAsJSONAPI(
+            final Object collection,
+            final JsonGenerator jgen,
+            final SerializerProvider provider) throws IOException {
+        final int flushInterval = flushInterval();
+        final Iterator<?> resources = JsonApiCollections.iterator(collection);
+        try {
+            jgen.writeStartArray();
+            int written = 0;
+            while (resources.hasNext()) {
+                final Object resource = resources.next();
+                if (resource == null) {
+                    jgen.writeNull();
+                } else {
+                    writeResource(resource, jgen, provider);
+                }
+                JsonApiCollections.flushIfDue(jgen, ++written, flushInterval);
+            }
+            jgen.writeEndArray();
+        } catch (final ReflectiveOperationException e) {
+            throw unidentifiedResource(e);
+        } finally {
+            JsonApiCollections.close(collection);
+        }
+    }
+
+    private JsonApiRelationshipCache relationshipCache() {
+        JsonApiRelationshipCache cache = relationshipCache;
+        if (cache == null) {
+            cache = JsonApiRelationshipCache.of(idAnnotations(), belongsToAnnotations(), hasManyAnnotations(),
+                    accessorStrategy());
+            relationshipCache = cache;
+        }
+        return cache;
+    }
+
+    private void writeResource(
+            final Object object,
+            final JsonGenerator jgen,
+            final SerializerProvider provider) throws ReflectiveOperationException, IOException {
+        final Class<?> type = identifierResolver().resourceClass(object);
+        final JsonApiResourceTemplate template = templates.get(type);
+
+        // A resource met again inside itself, or twice inside the same resource, is only identified
+        final JsonApiGraph graph = JsonApiGraph.of(provider);
+        if (!graph.enter(object)) {
+            writeResourceIdentifier(object, jgen, template);
+            return;
+        }
         try {
-            final JsonApiRelationshipMap jsonApiRelationshipMap =
-                    new JsonApiRelationshipMap(object, idAnnotations(), belongsToAnnotations(), hasManyAnnotations());
-            writeObjectAsJSONAPI(object, jgen, jsonApiRelationshipMap);
-        } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException | IOException e) {
-            e.printStackTrace();
+            final JsonApiListener listener = listener();
+            if (listener == JsonApiListener.NONE) {
+                writeTemplated(object, jgen, provider, template, graph);
+                return;
+            }
+            final long start = System.nanoTime();
+            writeTemplated(object, jgen, provider, template, graph);
+            listener.resourceWritten(type, System.nanoTime() - start);
+        } finally {
+            graph.exit();
         }
     }
 
+    private void writeResourceIdentifier(
+            final Object object,
+            final JsonGenerator jgen,
+            final JsonApiResourceTemplate template) throws ReflectiveOperationException, IOException {
+        jgen.writeStartObject();
+        jgen.writeFieldName(JsonApiConstants.ID_NAME);
+        jgen.writeString(linkageId(object));
+        jgen.writeFieldName(JsonApiConstants.TYPE_NAME);
+        jgen.writeString(template.getType());
+        jgen.writeEndObject();
+    }
+
+    private void writeTemplated(
+            final Object object,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final JsonApiResourceTemplate template,
+            final JsonApiGraph graph) throws ReflectiveOperationException, IOException {
+        // What is written inside another resource depends on the resources around it, so it is not cached
+        final JsonApiFragmentCache cache = fragmentCache();
+        if ((cache == null) || graph.isNested()) {
+            writeObjectAsJSONAPI(object, jgen, provider, template, graph);
+        } else {
+            writeFragment(object, jgen, provider, template, cache, graph);
+        }
+    }
+
+    /**
+     * Writes the cached fragment of {@code object} if its version has one, otherwise writes and caches it
+     */
+    private void writeFragment(
+            final Object object,
+            final JsonGenerator jgen,
+            final SerializerProvider provider,
+            final JsonApiResourceTemplate template,
+            final JsonApiFragmentCache cache,
+            final JsonApiGraph graph) throws ReflectiveOperationException, IOException {
+        // Has many linkage changes with the related resources, whatever the version of the resource
+        final Object version = (fieldMask(template, provider) == template.getAllFields())
+                && (errorPolicy() == JsonApiErrorPolicy.STRICT) && !template.hasManyLinkage()
+                ? fragmentVersion(object) : null;
+        if (version == null) {
+            writeObjectAsJSONAPI(object, jgen, provider, template, graph);
+            return;
+        }
+
+        final JsonApiResourceKey key = new JsonApiResourceKey(template.getType().getValue(),
+                resourceId(object, template.getRelationshipMap()));
+        SerializableString fragment = cache.get(key, version);
+        if (fragment == null) {
+            final StringWriter json = new StringWriter();
+            final ObjectCodec codec = jgen.getCodec();
+            try (final JsonGenerator fragmentGenerator =
+                    ((codec != null) ? codec.getFactory() : FRAGMENT_FACTORY).createGenerator(json)) {
+                writeObjectAsJSONAPI(object, fragmentGenerator, provider, template, graph);
+            } catch (final JsonApiException e) {
+                // Pointers from the fragment's own generator start at the resource rather than the document
+                throw JsonApiErrors.within(jgen.getOutputContext(), e);
+            }
+            fragment = new SerializedString(json.toString());
+            // Resources written inside it may change whatever its version
+            if (!graph.hasNested()) {
+                cache.put(key, version, fragment);
+            }
+        }
+        jgen.writeRawValue(fragment);
+    }
+
     private void writeObjectAsJSONAPI(
             final Object object,
             final JsonGenerator jgen,
-            final JsonApiRelationshipMap
-            jsonApiRelationshipMap)
-                    throws IllegalAccessException, InvocationTargetException, NoSuchMethodException, IOException {
+            final SerializerProvider provider,
+            final JsonApiResourceTemplate template,
+            final JsonApiGraph graph) throws ReflectiveOperationException, IOException {
 
-        // Model Information
-        final ClassAnnotationMeta modelNames = new ClassAnnotationMeta(object.getClass(), CaseFormat.UPPER_CAMEL, pathFormat());
+        final JsonApiRelationshipMap jsonApiRelationshipMap = template.getRelationshipMap();
+
+        // The include paths of a top level resource are followed from the relationships read to write it
+        final JsonApiIncludeTree include = graph.isNested() ? JsonApiIncludeTree.EMPTY : graph.getCollecting();
+
+        // The id is read first so a resource that cannot be identified is not partly written
+        final String modelIdentifier = resourceId(object, jsonApiRelationshipMap);
+        final String selfLink = template.selfLink(modelIdentifier);
 
         // Root
         jgen.writeStartObject();
 
         // Write out the id
-        final Object idObjectValue;
-        if (object.getClass().isEnum()) {
-            idObjectValue = object.getClass().getMethod("name").invoke(object);
-        } else {
-            idObjectValue = PropertyUtils.getProperty(object, jsonApiRelationshipMap.getIdAttribute().getName());
-        }
-        final String modelIdentifier = String.valueOf(idObjectValue);
 
-        jgen.writeStringField(JsonApiConstants.ID, modelIdentifier);
-        jgen.writeStringField(JsonApiConstants.TYPE, modelNames.getPlural());
+        jgen.writeFieldName(JsonApiConstants.ID_NAME);
+        jgen.writeString(modelIdentifier);
+        jgen.writeFieldName(JsonApiConstants.TYPE_NAME);
+        jgen.writeString(template.getType());
 
-        jgen.writeObjectFieldStart(JsonApiConstants.LINKS);
-        jgen.writeObjectField(JsonApiConstants.SELF,
-                String.format(JsonApiConstants.ID_FORMAT, namespace(), modelNames.getPlural(), modelIdentifier));
+        jgen.writeFieldName(JsonApiConstants.LINKS_NAME);
+        jgen.writeStartObject();
+        jgen.writeFieldName(JsonApiConstants.SELF_NAME);
+        jgen.writeString(selfLink);
         jgen.writeEndObject();
 
+        // Only the fields in the requested fieldset are read
+        final JsonApiFieldMask mask = fieldMask(template, provider);
+
         // Attributes
-        jgen.writeObjectFieldStart(JsonApiConstants.ATTRIBUTES);
-        for (final Field field : jsonApiRelationshipMap.getAttributes()) {
-            final String fieldName = field.getName();
-            final Object value = PropertyUtils.getProperty(object, fieldName);
-            final String attributeName = CaseFormat.LOWER_CAMEL.to(pathFormat(), fieldName);
-            jgen.writeObjectField(attributeName, value);
+        jgen.writeFieldName(JsonApiConstants.ATTRIBUTES_NAME);
+        jgen.writeStartObject();
+        final List<JsonApiProperty> attributes = jsonApiRelationshipMap.getAttributes();
+        final SerializedString[] attributeNames = template.getAttributeNames();
+        for (final int i : mask.getAttributes()) {
+            final Object value;
+            try {
+                value = attributes.get(i).get(object);
+            } catch (final ReflectiveOperationException e) {
+                memberFailed("Could not read attribute", jgen.getOutputContext(), attributeNames[i], e);
+                continue;
+            }
+            jgen.writeFieldName(attributeNames[i]);
+            provider.defaultSerializeValue(value, jgen);
         }
         jgen.writeEndObject();
 
         // hasMany
-        jgen.writeObjectFieldStart(JsonApiConstants.RELATIONSHIPS);
-        for (final Field field : jsonApiRelationshipMap.getHasManyRelationships()) {
-            final String relationshipName = CaseFormat.LOWER_CAMEL.to(pathFormat(), field.getName());
-            final ParameterizedType parameterizedType = (ParameterizedType) field.getGenericType();
-            final Class<?> actualTypeClass = (Class<?>) parameterizedType.getActualTypeArguments()[0];
-
-            final ClassAnnotationMeta relationshipNames = new ClassAnnotationMeta(actualTypeClass, CaseFormat.UPPER_CAMEL,
-                    pathFormat());
-
-            jgen.writeObjectFieldStart(relationshipName);
-            jgen.writeObjectFieldStart(JsonApiConstants.LINKS);
-
-            jgen.writeObjectField(
-                    JsonApiConstants.SELF,
-                    String.format(JsonApiConstants.RELATIONSHIP_FORMAT, namespace(), modelNames.getPlural(),
-                            modelIdentifier, relationshipNames.getPlural()));
-            jgen.writeObjectField(JsonApiConstants.RELATED, String.format(JsonApiConstants.RELATED_FORMAT, namespace(),
-                    modelNames.getPlural(), modelIdentifier, relationshipNames.getPlural()));
+        jgen.writeFieldName(JsonApiConstants.RELATIONSHIPS_NAME);
+        jgen.writeStartObject();
+        final JsonStreamContext relationships = jgen.getOutputContext();
+        final JsonApiResourceTemplate.Relationship[] hasManyRelationships = template.getHasManyRelationships();
+        for (final int i : mask.getHasManyRelationships()) {
+            final JsonApiResourceTemplate.Relationship relationship = hasManyRelationships[i];
+
+            // Linkage is only written for collections that are already loaded
+            Object related = null;
+            boolean hasLinkage = relationship.hasLinkage();
+            if (hasLinkage) {
+                try {
+                    related = relationship.getProperty().get(object);
+                    hasLinkage = (related == null)
+                            || (JsonApiCollections.isCollection(related) && identifierResolver().isInitialized(related));
+                } catch (final ReflectiveOperationException e) {
+                    memberFailed("Could not read relationship", relationships, relationship.getName(), e);
+                    continue;
+                }
+            }
 
-            jgen.writeEndObject();
+            jgen.writeFieldName(relationship.getName());
+            jgen.writeStartObject();
+            writeRelationshipLinks(jgen, selfLink, relationship);
+            if (hasLinkage) {
+                writeHasManyLinkage(jgen, relationships, relationship, related);
+                includeWhileWriting(related, relationship, include, graph, provider);
+            }
             jgen.writeEndObject();
         }
 
         // belongsTo
-        for (final Field field : jsonApiRelationshipMap.getBelongsToRelationships()) {
-            final String relationshipName = CaseFormat.UPPER_CAMEL.to(pathFormat(), field.getName());
-            final Object relatedEntity = PropertyUtils.getProperty(object, field.getName());
-
-            final ClassAnnotationMeta relationshipNames = new ClassAnnotationMeta(field.getType(), CaseFormat.UPPER_CAMEL,
-                    pathFormat());
-
-            jgen.writeObjectFieldStart(relationshipName);
-            jgen.writeObjectFieldStart(JsonApiConstants.LINKS);
-
-            jgen.writeObjectField(
-                    JsonApiConstants.SELF,
-                    String.format(JsonApiConstants.RELATIONSHIP_FORMAT, namespace(), modelNames.getPlural(),
-                            modelIdentifier, relationshipNames.getSingular()));
-            jgen.writeObjectField(JsonApiConstants.RELATED, String.format(JsonApiConstants.RELATED_FORMAT, namespace(),
-                    modelNames.getPlural(), modelIdentifier, relationshipNames.getSingular()));
+        final JsonApiResourceTemplate.Relationship[] belongsToRelationships = template.getBelongsToRelationships();
+        for (final int i : mask.getBelongsToRelationships()) {
+            final JsonApiResourceTemplate.Relationship relationship = belongsToRelationships[i];
+            final Object relatedEntity;
+            final String relatedId;
+            try {
+                relatedEntity = relationship.getProperty().get(object);
+                relatedId = (relatedEntity != null) ? linkageId(relatedEntity) : null;
+            } catch (final ReflectiveOperationException e) {
+                memberFailed("Could not read relationship", relationships, relationship.getName(), e);
+                continue;
+            }
 
-            jgen.writeEndObject();
+            jgen.writeFieldName(relationship.getName());
+            jgen.writeStartObject();
+            writeRelationshipLinks(jgen, selfLink, relationship);
 
             // Data
+            jgen.writeFieldName(JsonApiConstants.DATA_NAME);
             final boolean hasRelatedEntity = relatedEntity != null;
             if (hasRelatedEntity) {
-                jgen.writeObjectFieldStart(JsonApiConstants.DATA);
-                jgen.writeObjectField(JsonApiConstants.TYPE, relationshipNames.getPlural());
+                jgen.writeStartObject();
+                jgen.writeFieldName(JsonApiConstants.TYPE_NAME);
+                jgen.writeString(relationship.getType());
 
-                final Object entity = PropertyUtils.getProperty(object, field.getName());
-
-                Object entityId = null;
-                if (entity.getClass().isEnum()) {
-                    entityId = entity.getClass().getMethod("name").invoke(entity);
-                } else {
-                    final JsonApiRelationshipMap relationshipMap =
-                            new JsonApiRelationshipMap(entity, idAnnotations(), belongsToAnnotations(), hasManyAnnotations());
-                    entityId = PropertyUtils.getProperty(entity, relationshipMap.getIdAttribute().getName());
-                }
-
-                jgen.writeObjectField(JsonApiConstants.ID, String.valueOf(entityId));
+                jgen.writeFieldName(JsonApiConstants.ID_NAME);
+                jgen.writeString(relatedId);
 
                 jgen.writeEndObject();
             } else {
-                jgen.writeObjectField(JsonApiConstants.DATA, null);
+                jgen.writeNull();
             }
 
             jgen.writeEndObject();
+            includeWhileWriting(relatedEntity, relationship, include, graph, provider);
         }
         jgen.writeEndObject();
 
         // Meta
-        if (jsonApiRelationshipMap.getMeta() != null) {
-            jgen.writeObjectField(JsonApiConstants.META, jsonApiRelationshipMap.getMeta());
+        final JsonApiProperty meta = jsonApiRelationshipMap.getMeta();
+        if (meta != null) {
+            Object metaValue = null;
+            try {
+                metaValue = meta.get(object);
+            } catch (final ReflectiveOperationException e) {
+                memberFailed("Could not read meta", jgen.getOutputContext(), JsonApiConstants.META_NAME, e);
+            }
+            if (metaValue != null) {
+                jgen.writeFieldName(JsonApiConstants.META_NAME);
+                provider.defaultSerializeValue(metaValue, jgen);
+            }
         }
 
         // End Root
         jgen.writeEndObject();
     }
 
+    /**
+     * Adds the resources {@code related} holds to the included resources if an include path names
+     * {@code relationship}, so that relationships that have been read are not read again to collect them
+     */
+    private static void includeWhileWriting(
+            final Object related,
+            final JsonApiResourceTemplate.Relationship relationship,
+            final JsonApiIncludeTree include,
+            final JsonApiGraph graph,
+            final SerializerProvider provider) throws ReflectiveOperationException, IOException {
+        if (include.isEmpty()) {
+            return;
+        }
+        final String name = relationship.getName().getValue();
+        final JsonApiIncludeTree below = include.getChildren().get(name);
+        // An iterator or stream has been used up by the linkage, so it is read again afterwards
+        if ((below == null) || !JsonApiCollections.isRepeatable(related)) {
+            return;
+        }
+        if (JsonApiCollections.isCollection(related)) {
+            final Iterator<?> resources = JsonApiCollections.iterator(related);
+            while (resources.hasNext()) {
+                final Object resource = resources.next();
+                if (resource != null) {
+                    includeResource(resource, below, graph, provider);
+                }
+            }
+        } else if (related != null) {
+            includeResource(related, below, graph, provider);
+        }
+        graph.getCollected().add(name);
+    }
+
+    /**
+     * Fails the resource being written with a {@link JsonApiException} pointing at {@code member} of the object
+     * written in {@code container}, or skips the member if {@link #errorPolicy()} is lenient
+     */
+    private void memberFailed(
+            final String title,
+            final JsonStreamContext container,
+            final SerializableString member,
+            final ReflectiveOperationException cause) {
+        final JsonApiException exception = JsonApiErrors.memberError(JsonApiErrors.INTERNAL_SERVER_ERROR, title,
+                container, member.getValue(), cause);
+        if (errorPolicy() == JsonApiErrorPolicy.STRICT) {
+            throw exception;
+        }
+        memberSkipped(exception);
+    }
+
+    /**
+     * Writes {@code data} for a hasMany relationship, reading each id through {@link #identifierResolver()}
+     */
+    private void writeHasManyLinkage(
+            final JsonGenerator jgen,
+            final JsonStreamContext relationships,
+            final JsonApiResourceTemplate.Relationship relationship,
+            final Object related) throws IOException {
+        jgen.writeFieldName(JsonApiConstants.DATA_NAME);
+        jgen.writeStartArray();
+        final int maxLinkage = maxLinkage();
+        int written = 0;
+        boolean more = false;
+        if (related != null) {
+            final Iterator<?> resources = JsonApiCollections.iterator(related);
+            try {
+                while (resources.hasNext()) {
+                    if ((maxLinkage > 0) && (written == maxLinkage)) {
+                        more = true;
+                        break;
+                    }
+                    final Object resource = resources.next();
+                    if (resource == null) {
+                        continue;
+                    }
+                    final String id;
+                    try {
+                        id = linkageId(resource);
+                    } catch (final ReflectiveOperationException e) {
+                        memberFailed("Could not read relationship", relationships, relationship.getName(), e);
+                        continue;
+                    }
+                    jgen.writeStartObject();
+                    jgen.writeFieldName(JsonApiConstants.TYPE_NAME);
+                    jgen.writeString(relationship.getType());
+                    jgen.writeFieldName(JsonApiConstants.ID_NAME);
+                    jgen.writeString(id);
+                    jgen.writeEndObject();
+                    written++;
+                }
+            } finally {
+                JsonApiCollections.close(related);
+            }
+        }
+        jgen.writeEndArray();
+
+        // Only a collection knows its total without being read to the end
+        if (more && (related instanceof Collection)) {
+            jgen.writeFieldName(JsonApiConstants.META_NAME);
+            jgen.writeStartObject();
+            jgen.writeFieldName(JsonApiConstants.COUNT_NAME);
+            jgen.writeNumber(((Collection<?>) related).size());
+            jgen.writeEndObject();
+        }
+    }
+
+    /**
+     * @return the sparse fieldset requested for the template's type in the document being written, or every field
+     *         if none was requested
+     */
+    private static JsonApiFieldMask fieldMask(final JsonApiResourceTemplate template, final SerializerProvider provider) {
+        final JsonApiFieldsets fieldsets = (JsonApiFieldsets) provider.getAttribute(JsonApiFieldsets.class);
+        if (fieldsets != null) {
+            final JsonApiFieldMask mask = fieldsets.mask(template);
+            if (mask != null) {
+                return mask;
+            }
+        }
+        return template.getAllFields();
+    }
+
+    private static String resourceId(final Object object, final JsonApiRelationshipMap relationshipMap)
+            throws ReflectiveOperationException {
+        if (object instanceof Enum) {
+            return ((Enum<?>) object).name();
+        }
+        return String.valueOf(relationshipMap.getIdAttribute().get(object));
+    }
+
+    /**
+     * @return the id of a related resource, read through {@link #identifierResolver()} so that a proxy is not loaded
+     *         just to link to it
+     */
+    private String linkageId(final Object related) throws ReflectiveOperationException {
+        if (related instanceof Enum) {
+            return ((Enum<?>) related).name();
+        }
+        final JsonApiIdentifierResolver resolver = identifierResolver();
+        final Object id = resolver.identifier(related);
+        if (id != null) {
+            return String.valueOf(id);
+        }
+        return resourceId(related, relationshipCache().get(resolver.resourceClass(related)));
+    }
+
+    private JsonApiResourceTemplate template(final Object object) throws ReflectiveOperationException {
+        return templates.get(identifierResolver().resourceClass(object));
+    }
+
+    /**
+     * @return the type and id {@code object} is written with
+     */
+    JsonApiResourceKey resourceKey(final Object object) throws ReflectiveOperationException {
+        return new JsonApiResourceKey(template(object).getType().getValue(), linkageId(object));
+    }
+
+    /**
+     * @return the link to the collection of resources of {@code type}
+     */
+    String collectionLink(final Class<?> type) {
+        return templates.get(type).collectionLink();
+    }
+
+    /**
+     * @return a {@link JsonApiPage} cursor of the {@code sort} keys and of their values in {@code object}, followed by
+     *         its id unless that is a sort key
+     */
+    String cursor(final Object object, final List<String> sort, final SerializerProvider provider)
+            throws ReflectiveOperationException, IOException {
+        final List<JsonApiProperty> properties = cursorProperties(template(object), sort);
+        final List<Object> values = new ArrayList<>(properties.size());
+        for (final JsonApiProperty property : properties) {
+            values.add(property.get(object));
+        }
+        return JsonApiPage.encode(sort, values, provider);
+    }
+
+    /**
+     * @return the properties whose values a {@link JsonApiPage} cursor of resources of {@code type} holds for the
+     *         {@code sort} keys
+     */
+    List<JsonApiProperty> cursorProperties(final Class<?> type, final List<String> sort) {
+        return cursorProperties(templates.get(type), sort);
+    }
+
+    private static List<JsonApiProperty> cursorProperties(
+            final JsonApiResourceTemplate template,
+            final List<String> sort) {
+        final JsonApiProperty idAttribute = template.getRelationshipMap().getIdAttribute();
+        final List<JsonApiProperty> properties = new ArrayList<>(sort.size() + 1);
+        boolean sortedById = false;
+        for (final String key : sort) {
+            final String name = key.startsWith("-") ? key.substring(1) : key;
+            if (JsonApiConstants.ID.equals(name)) {
+                properties.add(idAttribute);
+                sortedById = true;
+                continue;
+            }
+            final JsonApiProperty attribute = template.getAttribute(name);
+            if (attribute == null) {
+                throw new JsonApiException(JsonApiErrors.BAD_REQUEST, null, "Invalid sort",
+                        "No attribute " + name + " to sort by", null, null);
+            }
+            properties.add(attribute);
+        }
+        if (!sortedById) {
+            properties.add(idAttribute);
+        }
+        return properties;
+    }
+
+    /**
+     * @return false if {@code object}, or a resource or collection reached from it through the relationships named
+     *         in {@code include}, has not been loaded, so that writing it would query for it. Relationships off the
+     *         include paths are written as linkage, which does not load them.
+     */
+    boolean isLoaded(final Object object, final JsonApiIncludeTree include) throws ReflectiveOperationException {
+        final JsonApiIdentifierResolver resolver = identifierResolver();
+        if (!resolver.isInitialized(object)) {
+            return false;
+        }
+        final JsonApiResourceTemplate template = template(object);
+        for (final Map.Entry<String, JsonApiIncludeTree> path : include.getChildren().entrySet()) {
+            final JsonApiResourceTemplate.Relationship relationship = template.getRelationship(path.getKey());
+            final Object related = (relationship != null) ? relationship.getProperty().get(object) : null;
+            if (related == null) {
+                continue;
+            }
+            if (!resolver.isInitialized(related)) {
+                return false;
+            }
+            final Iterator<?> resources = JsonApiCollections.isCollection(related)
+                    ? JsonApiCollections.iterator(related) : Collections.singleton(related).iterator();
+            while (resources.hasNext()) {
+                final Object resource = resources.next();
+                if ((resource != null) && !isLoaded(resource, path.getValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Receives each related resource reached through an include path
+     */
+    interface RelatedVisitor {
+        /**
+         * @param include
+         *            the include paths below the relationship {@code related} was reached through
+         */
+        void visit(Object related, JsonApiIncludeTree include) throws ReflectiveOperationException, IOException;
+    }
+
+    /**
+     * Calls {@code visitor} with every resource related to {@code object} through the relationships named in
+     * {@code include}
+     */
+    void forEachRelated(final Object object, final JsonApiIncludeTree include, final RelatedVisitor visitor)
+            throws ReflectiveOperationException, IOException {
+        forEachRelated(object, include, Collections.emptySet(), visitor);
+    }
+
+    private void forEachRelated(
+            final Object object,
+            final JsonApiIncludeTree include,
+            final Set<String> skipped,
+            final RelatedVisitor visitor) throws ReflectiveOperationException, IOException {
+        final JsonApiResourceTemplate template = template(object);
+        for (final Map.Entry<String, JsonApiIncludeTree> path : include.getChildren().entrySet()) {
+            final JsonApiResourceTemplate.Relationship relationship = template.getRelationship(path.getKey());
+            if ((relationship == null) || skipped.contains(path.getKey())) {
+                continue;
+            }
+            final Object related = relationship.getProperty().get(object);
+            if (related == null) {
+                continue;
+            }
+            if (JsonApiCollections.isCollection(related)) {
+                final Iterator<?> resources = JsonApiCollections.iterator(related);
+                while (resources.hasNext()) {
+                    final Object resource = resources.next();
+                    if (resource != null) {
+                        visitor.visit(resource, path.getValue());
+                    }
+                }
+            } else {
+                visitor.visit(related, path.getValue());
+            }
+        }
+    }
+
+    /**
+     * Follows the relationships of {@code object} named in {@code include}, adding every resource reached to
+     * {@code included} keyed by its type and id. Resources reached by more than one path are only added once.
+     * Resources loaded under the same key are added, and followed, in place of the ones reached. The paths below a
+     * resource are only followed once, however many paths reach it.
+     */
+    void collectIncluded(
+            final Object object,
+            final JsonApiIncludeTree include,
+            final JsonApiGraph graph,
+            final SerializerProvider provider) throws ReflectiveOperationException, IOException {
+        forEachRelated(object, include, (related, below) -> includeResource(related, below, graph, provider));
+    }
+
+    /**
+     * Collects the resources to include as {@link #collectIncluded} does, from the relationships of a top level
+     * resource that have not already been followed while writing it, such as lazy collections, relationships
+     * left out by a sparse fieldset and every relationship of a resource written from the fragment cache
+     */
+    void collectRemainingIncluded(
+            final Object object,
+            final JsonApiIncludeTree include,
+            final JsonApiGraph graph,
+            final SerializerProvider provider) throws ReflectiveOperationException, IOException {
+        forEachRelated(object, include, graph.getCollected(),
+                (related, below) -> includeResource(related, below, graph, provider));
+    }
+
+    private static void includeResource(
+            final Object resource,
+            final JsonApiIncludeTree include,
+            final JsonApiGraph graph,
+            final SerializerProvider provider) throws ReflectiveOperationException, IOException {
+        // Only resources written by a JsonApiSerializer have a type and id, enums and the like are linkage only
+        final JsonSerializer<Object> serializer = provider.findValueSerializer(resource.getClass(), null);
+        if (!(serializer instanceof JsonApiSerializer)) {
+            return;
+        }
+        final JsonApiSerializer resourceSerializer = (JsonApiSerializer) serializer;
+        final JsonApiResourceKey key = resourceSerializer.resourceKey(resource);
+        final Object loadedResource = graph.getLoaded().get(key);
+        final Object includedResource = (loadedResource != null) ? loadedResource : resource;
+        graph.getIncluded().putIfAbsent(key, includedResource);
+        if (!include.isEmpty() && graph.follow(includedResource, include)) {
+            resourceSerializer.collectIncluded(includedResource, include, graph, provider);
+        }
+    }
+
+    private static void writeRelationshipLinks(
+            final JsonGenerator jgen,
+            final String selfLink,
+            final JsonApiResourceTemplate.Relationship relationship) throws IOException {
+        jgen.writeFieldName(JsonApiConstants.LINKS_NAME);
+        jgen.writeStartObject();
+        jgen.writeFieldName(JsonApiConstants.SELF_NAME);
+        jgen.writeString(selfLink.concat(relationship.getRelationshipSuffix()));
+        jgen.writeFieldName(JsonApiConstants.RELATED_NAME);
+        jgen.writeString(selfLink.concat(relationship.getRelatedSuffix()));
+        jgen.writeEndObject();
+    }
+
 }
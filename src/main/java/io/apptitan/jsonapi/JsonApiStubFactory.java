@@ -0,0 +1,16 @@
+package io.apptitan.jsonapi;
+
+/**
+ * Creates the object a relationship is set to when a document is read, from the type and id of its resource
+ * identifier. An implementation might return {@code EntityManager.getReference(type, id)} so the relationship can be
+ * persisted without loading the related entity.
+ */
+public interface JsonApiStubFactory {
+
+    /**
+     * @param id
+     *            the id converted to the type of the id property of {@code type}, or the id as a string for an enum
+     * @return an object standing in for the resource of {@code type} with {@code id}
+     */
+    Object stub(Class<?> type, Object id) throws ReflectiveOperationException;
+}
@@ -0,0 +1,48 @@
+package io.apptitan.jsonapi;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.CaseFormat;
+
+/**
+ * The resource classes reachable from a class through its relationships, keyed by their type in documents, the
+ * plural given by {@link JsonApiResource} or derived from the class name, to find the class of an included resource
+ * from its {@code type} member.
+ */
+final class JsonApiTypeRegistry {
+    private final Map<String, Class<?>> classes = new HashMap<>();
+
+    JsonApiTypeRegistry(final Class<?> root, final JsonApiRelationshipCache relationshipCache,
+            final CaseFormat pathFormat) {
+        final Deque<Class<?>> pending = new ArrayDeque<>();
+        final Set<Class<?>> reached = new HashSet<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            final Class<?> type = pending.poll();
+            if (type.isEnum() || type.isInterface() || type.isArray() || type.isPrimitive() || !reached.add(type)) {
+                continue;
+            }
+            // The first class reached keeps a type name shared by several
+            classes.putIfAbsent(new ClassAnnotationMeta(type, CaseFormat.UPPER_CAMEL, pathFormat).getPlural(), type);
+            final JsonApiRelationshipMap relationshipMap = relationshipCache.get(type);
+            for (final JsonApiProperty property : relationshipMap.getBelongsToRelationships()) {
+                pending.add(property.getType());
+            }
+            for (final JsonApiProperty property : relationshipMap.getHasManyRelationships()) {
+                pending.add(JsonApiResourceTemplate.elementType(property));
+            }
+        }
+    }
+
+    /**
+     * @return the class of resources of {@code type}, or null if none is reachable
+     */
+    Class<?> get(final String type) {
+        return classes.get(type);
+    }
+}
@@ -0,0 +1,226 @@
+package io.apptitan.jsonapi;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongConsumer;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes {@link JsonApiResponse}s as UTF-8 straight to an {@link OutputStream}, {@link WritableByteChannel} or
+ * {@link ByteBuffer}, without encoding them to a {@code String} first.
+ * <p>
+ * Generators are created by the mapper's {@link JsonFactory}, which recycles their buffers per thread. A document
+ * written with a content length callback is held in a recycled buffer until it is complete, so that its length is
+ * known before any of it is written, unless it outgrows the buffer and is streamed instead.
+ */
+public final class JsonApiWriter {
+
+    /**
+     * Largest document buffered to find out its content length, by default
+     */
+    public static final int DEFAULT_BUFFER_LIMIT = 16 * 1024;
+
+    private final JsonFactory factory;
+    private final ObjectWriter writer;
+    private final JsonApiListener listener;
+
+    /**
+     * @param mapper
+     *            mapper with the serializers of the resources written
+     */
+    public JsonApiWriter(final ObjectMapper mapper) {
+        this(mapper, JsonApiListener.NONE);
+    }
+
+    /**
+     * @param listener
+     *            told the number of bytes of each document written
+     */
+    public JsonApiWriter(final ObjectMapper mapper, final JsonApiListener listener) {
+        this.factory = mapper.getFactory();
+        this.writer = mapper.writerFor(JsonApiResponse.class);
+        this.listener = listener;
+    }
+
+    /**
+     * @return number of bytes written. {@code out} is neither flushed early nor closed
+     */
+    public long write(final JsonApiResponse response, final OutputStream out) throws IOException {
+        return write(response, new CountingOutput(out, null, 0));
+    }
+
+    /**
+     * Writes a document of up to {@link #DEFAULT_BUFFER_LIMIT} bytes at once after passing its length to
+     * {@code contentLength}, and streams larger documents without calling it
+     *
+     * @return number of bytes written
+     */
+    public long write(final JsonApiResponse response, final OutputStream out, final LongConsumer contentLength)
+            throws IOException {
+        return write(response, out, DEFAULT_BUFFER_LIMIT, contentLength);
+    }
+
+    /**
+     * Writes a document of up to {@code bufferLimit} bytes at once after passing its length to
+     * {@code contentLength}, and streams larger documents without calling it
+     *
+     * @return number of bytes written
+     */
+    public long write(
+            final JsonApiResponse response,
+            final OutputStream out,
+            final int bufferLimit,
+            final LongConsumer contentLength) throws IOException {
+        return write(response, new CountingOutput(out, contentLength, bufferLimit));
+    }
+
+    /**
+     * Writes to a blocking channel
+     *
+     * @return number of bytes written
+     */
+    public long write(final JsonApiResponse response, final WritableByteChannel channel) throws IOException {
+        return write(response, new CountingOutput(Channels.newOutputStream(channel), null, 0));
+    }
+
+    /**
+     * Writes from the position of {@code buffer}, leaving its position after the document
+     *
+     * @return number of bytes written
+     * @throws java.nio.BufferOverflowException
+     *             if the document does not fit in the buffer
+     */
+    public int write(final JsonApiResponse response, final ByteBuffer buffer) throws IOException {
+        return (int) write(response, new CountingOutput(new ByteBufferOutput(buffer), null, 0));
+    }
+
+    private long write(final JsonApiResponse response, final CountingOutput out) throws IOException {
+        try {
+            try (final JsonGenerator jgen = factory.createGenerator(out, JsonEncoding.UTF8)) {
+                // The target belongs to the caller, closing the generator only flushes into it
+                jgen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                writer.writeValue(jgen, response);
+            }
+            out.finish();
+        } finally {
+            out.release();
+        }
+        if (listener != JsonApiListener.NONE) {
+            listener.bytesWritten(out.written);
+        }
+        return out.written;
+    }
+
+    /**
+     * Counts the bytes written, holding them in a buffer until they outgrow it if a content length is wanted
+     */
+    private final class CountingOutput extends OutputStream {
+        private final OutputStream out;
+        private final LongConsumer contentLength;
+        private final int bufferLimit;
+        private final BufferRecycler recycler;
+        private byte[] buffer;
+        private int buffered;
+        private long written;
+
+        CountingOutput(final OutputStream out, final LongConsumer contentLength, final int bufferLimit) {
+            this.out = out;
+            this.contentLength = contentLength;
+            this.bufferLimit = bufferLimit;
+            if (contentLength != null) {
+                this.recycler = factory._getBufferRecycler();
+                this.buffer = recycler.allocByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER, bufferLimit);
+            } else {
+                this.recycler = null;
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if ((buffer != null) && (buffered < bufferLimit)) {
+                buffer[buffered++] = (byte) b;
+                return;
+            }
+            spill();
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if ((buffer != null) && (buffered + length <= bufferLimit)) {
+                System.arraycopy(bytes, offset, buffer, buffered, length);
+                buffered += length;
+                return;
+            }
+            spill();
+            out.write(bytes, offset, length);
+            written += length;
+        }
+
+        /**
+         * Writes out what has been buffered and stops buffering, as the document is too long to have a content
+         * length
+         */
+        private void spill() throws IOException {
+            if (buffer != null) {
+                out.write(buffer, 0, buffered);
+                written += buffered;
+                release();
+            }
+        }
+
+        /**
+         * Flushes while streaming. A buffered document is only written once complete.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (buffer == null) {
+                out.flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (buffer != null) {
+                contentLength.accept(buffered);
+                out.write(buffer, 0, buffered);
+                written += buffered;
+            }
+            out.flush();
+        }
+
+        void release() {
+            if (buffer != null) {
+                recycler.releaseByteBuffer(BufferRecycler.BYTE_WRITE_CONCAT_BUFFER, buffer);
+                buffer = null;
+            }
+        }
+    }
+
+    private static final class ByteBufferOutput extends OutputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferOutput(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(final int b) {
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) {
+            buffer.put(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.apptitan.jsonapi.micrometer;
+
+import java.util.concurrent.TimeUnit;
+
+import io.apptitan.jsonapi.JsonApiListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records {@link JsonApiListener} measurements in a Micrometer {@link MeterRegistry}:
+ * <ul>
+ * <li>{@code jsonapi.resource.write} and {@code jsonapi.resource.read} timers tagged with the resource type</li>
+ * <li>{@code jsonapi.document.write} and {@code jsonapi.document.read} timers</li>
+ * <li>{@code jsonapi.document.resources} summaries of the resources in the primary data of documents, tagged with
+ * the operation, {@code write} or {@code read}</li>
+ * <li>{@code jsonapi.document.included} summary of the resources included in compound documents written</li>
+ * <li>{@code jsonapi.document.bytes} summary of the length of documents written by a
+ * {@link io.apptitan.jsonapi.JsonApiWriter}</li>
+ * <li>{@code jsonapi.metadata.builds} counter of metadata cache misses, tagged with the resource type</li>
+ * </ul>
+ * Timers publish a percentile histogram so that tail latencies can be aggregated across instances.
+ */
+public class JsonApiMicrometerListener implements JsonApiListener {
+
+    private static final String TYPE = "type";
+    private static final String OPERATION = "operation";
+
+    private final MeterRegistry registry;
+    private final Timer documentWrites;
+    private final Timer documentReads;
+    private final DistributionSummary documentResourcesWritten;
+    private final DistributionSummary documentResourcesRead;
+    private final DistributionSummary documentIncluded;
+    private final DistributionSummary documentBytes;
+
+    // Meters of each resource class, so that writing a resource does not look them up in the registry
+    private final ClassValue<Meters> meters = new ClassValue<Meters>() {
+        @Override
+        protected Meters computeValue(final Class<?> type) {
+            return new Meters(type.getSimpleName());
+        }
+    };
+
+    private final class Meters {
+        private final Timer writes;
+        private final Timer reads;
+        private final Counter metadataBuilds;
+
+        Meters(final String type) {
+            this.writes = timer("jsonapi.resource.write", "Time to write one resource", type);
+            this.reads = timer("jsonapi.resource.read", "Time to read one resource", type);
+            this.metadataBuilds = Counter.builder("jsonapi.metadata.builds")
+                    .description("Resource metadata built because it was not cached")
+                    .tag(TYPE, type)
+                    .register(registry);
+        }
+    }
+
+    public JsonApiMicrometerListener(final MeterRegistry registry) {
+        this.registry = registry;
+        this.documentWrites = timer("jsonapi.document.write", "Time to write a document", null);
+        this.documentReads = timer("jsonapi.document.read", "Time to read a document", null);
+        this.documentResourcesWritten = resources("write");
+        this.documentResourcesRead = resources("read");
+        this.documentIncluded = DistributionSummary.builder("jsonapi.document.included")
+                .description("Resources included in a compound document")
+                .register(registry);
+        this.documentBytes = DistributionSummary.builder("jsonapi.document.bytes")
+                .description("Length of a document written")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private DistributionSummary resources(final String operation) {
+        return DistributionSummary.builder("jsonapi.document.resources")
+                .description("Resources in the primary data of a document")
+                .tag(OPERATION, operation)
+                .register(registry);
+    }
+
+    private Timer timer(final String name, final String description, final String type) {
+        final Timer.Builder builder = Timer.builder(name).description(description).publishPercentileHistogram();
+        if (type != null) {
+            builder.tag(TYPE, type);
+        }
+        return builder.register(registry);
+    }
+
+    @Override
+    public void resourceWritten(final Class<?> type, final long nanos) {
+        meters.get(type).writes.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void documentWritten(final int resources, final int included, final long nanos) {
+        documentWrites.record(nanos, TimeUnit.NANOSECONDS);
+        documentResourcesWritten.record(resources);
+        documentIncluded.record(included);
+    }
+
+    @Override
+    public void bytesWritten(final long bytes) {
+        documentBytes.record(bytes);
+    }
+
+    @Override
+    public void resourceRead(final Class<?> type, final long nanos) {
+        meters.get(type).reads.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void documentRead(final Class<?> type, final int resources, final long nanos) {
+        documentReads.record(nanos, TimeUnit.NANOSECONDS);
+        documentResourcesRead.record(resources);
+    }
+
+    @Override
+    public void metadataBuilt(final Class<?> type, final long nanos) {
+        meters.get(type).metadataBuilds.increment();
+    }
+}
@@ -0,0 +1,377 @@
+package io.apptitan.jsonapi.processor;
+
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * Generates, for every package holding classes annotated with {@code @JsonApiResource}, {@code @JsonApiId},
+ * {@code @BelongsTo} or {@code @HasMany}, or with the JPA annotations the serializer recognises:
+ * <ul>
+ * <li>{@code JsonApiGeneratedAccessors}, a {@code JsonApiAccessorStrategy} calling each getter and setter directly
+ * rather than through reflection</li>
+ * <li>{@code JsonApiGeneratedModule}, a Jackson module registering a {@code JsonApiSerializer} and
+ * {@code JsonApiDeserializer} for each of those classes that use the generated accessors</li>
+ * <li>a GraalVM native-image {@code reflect-config.json} for the metadata that is still read reflectively</li>
+ * </ul>
+ * The processor is optional, add the processor jar to the annotation processor path to enable it. The serializer
+ * only reads these annotations from fields, so a warning is reported for any found on a getter.
+ */
+@SupportedAnnotationTypes({
+        "io.apptitan.jsonapi.JsonApiResource",
+        "io.apptitan.jsonapi.JsonApiId",
+        "io.apptitan.jsonapi.BelongsTo",
+        "io.apptitan.jsonapi.HasMany",
+        "javax.persistence.Entity",
+        "javax.persistence.Id",
+        "javax.persistence.ManyToOne",
+        "javax.persistence.OneToOne",
+        "javax.persistence.OneToMany",
+        "javax.persistence.ManyToMany" })
+public class JsonApiProcessor extends AbstractProcessor {
+
+    static final String ACCESSORS = "JsonApiGeneratedAccessors";
+    static final String MODULE = "JsonApiGeneratedModule";
+
+    private static final String NATIVE_IMAGE_PATH = "META-INF/native-image/io.apptitan.jsonapi/";
+
+    /**
+     * Getter and setter of a bean property
+     */
+    private static final class Property {
+        private String getter;
+        private String setter;
+        private String setterType;
+    }
+
+    private final Set<String> generatedPackages = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        final Map<String, Map<String, TypeElement>> resourcesByPackage = new TreeMap<>();
+        for (final TypeElement annotation : annotations) {
+            for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.METHOD) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "@"
+                            + annotation.getSimpleName() + " is only read from fields, annotate the field of "
+                            + element.getSimpleName() + " instead", element);
+                }
+                final Element type = (element.getKind().isField() || (element.getKind() == ElementKind.METHOD))
+                        ? element.getEnclosingElement() : element;
+                if (isResource(type)) {
+                    final TypeElement resource = (TypeElement) type;
+                    final String packageName = packageOf(resource).getQualifiedName().toString();
+                    resourcesByPackage.computeIfAbsent(packageName, p -> new TreeMap<>())
+                            .put(resource.getQualifiedName().toString(), resource);
+                }
+            }
+        }
+
+        for (final Map.Entry<String, Map<String, TypeElement>> entry : resourcesByPackage.entrySet()) {
+            if (!generatedPackages.add(entry.getKey())) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        "JSON API resources of " + entry.getKey() + " were already generated in an earlier round");
+                continue;
+            }
+            try {
+                generate(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+            } catch (final IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Could not generate JSON API resources of " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        // Other processors may also be interested in these annotations
+        return false;
+    }
+
+    /**
+     * @return true for a class the generated code in its package can refer to
+     */
+    private static boolean isResource(final Element type) {
+        if ((type.getKind() != ElementKind.CLASS) || type.getModifiers().contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        final NestingKind nesting = ((TypeElement) type).getNestingKind();
+        return (nesting == NestingKind.TOP_LEVEL)
+                || ((nesting == NestingKind.MEMBER) && type.getModifiers().contains(Modifier.STATIC)
+                        && isResource(type.getEnclosingElement()));
+    }
+
+    private static PackageElement packageOf(final Element element) {
+        Element current = element;
+        while (!(current instanceof PackageElement)) {
+            current = current.getEnclosingElement();
+        }
+        return (PackageElement) current;
+    }
+
+    private void generate(final String packageName, final List<TypeElement> resources) throws IOException {
+        final Map<TypeElement, Map<String, Property>> properties = new LinkedHashMap<>();
+        for (final TypeElement resource : resources) {
+            properties.put(resource, properties(resource, packageName));
+        }
+
+        writeSource(packageName, ACCESSORS, accessors(packageName, properties));
+        writeSource(packageName, MODULE, module(packageName, resources));
+
+        try (Writer writer = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+                NATIVE_IMAGE_PATH + packageName + "/reflect-config.json", resources.toArray(new Element[0]))
+                .openWriter()) {
+            writer.write(reflectConfig(resources));
+        }
+    }
+
+    private void writeSource(final String packageName, final String simpleName, final String source)
+            throws IOException {
+        final String name = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(name).openWriter()) {
+            writer.write(source);
+        }
+    }
+
+    /**
+     * @return getters and setters of {@code resource} and its superclasses that {@code packageName} can call, by
+     *         property name
+     */
+    private Map<String, Property> properties(final TypeElement resource, final String packageName) {
+        final Map<String, Property> properties = new TreeMap<>();
+        for (TypeElement current = resource; (current != null) && !isObject(current); current = superclass(current)) {
+            final boolean samePackage = packageOf(current).getQualifiedName().contentEquals(packageName);
+            for (final ExecutableElement method : ElementFilter.methodsIn(current.getEnclosedElements())) {
+                final Set<Modifier> modifiers = method.getModifiers();
+                if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)
+                        || (!samePackage && !modifiers.contains(Modifier.PUBLIC))) {
+                    continue;
+                }
+                final String name = method.getSimpleName().toString();
+                final TypeMirror returnType = method.getReturnType();
+                final int parameters = method.getParameters().size();
+
+                if ((parameters == 0) && (returnType.getKind() != TypeKind.VOID)) {
+                    String propertyName = null;
+                    if (name.startsWith("get") && (name.length() > 3)) {
+                        propertyName = name.substring(3);
+                    } else if (name.startsWith("is") && (name.length() > 2) && (returnType.getKind() == TypeKind.BOOLEAN)) {
+                        propertyName = name.substring(2);
+                    }
+                    if (propertyName != null) {
+                        final Property property = property(properties, propertyName);
+                        if (property.getter == null) {
+                            property.getter = name;
+                        }
+                    }
+                } else if ((parameters == 1) && (returnType.getKind() == TypeKind.VOID) && name.startsWith("set")
+                        && (name.length() > 3)) {
+                    final Property property = property(properties, name.substring(3));
+                    if (property.setter == null) {
+                        property.setter = name;
+                        property.setterType = castType(method.getParameters().get(0).asType());
+                    }
+                }
+            }
+        }
+        return properties;
+    }
+
+    private static Property property(final Map<String, Property> properties, final String capitalized) {
+        return properties.computeIfAbsent(Introspector.decapitalize(capitalized), n -> new Property());
+    }
+
+    private static boolean isObject(final TypeElement type) {
+        return type.getQualifiedName().contentEquals(Object.class.getName());
+    }
+
+    private static TypeElement superclass(final TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        return (superclass.getKind() == TypeKind.DECLARED) ? (TypeElement) ((DeclaredType) superclass).asElement()
+                : null;
+    }
+
+    /**
+     * @return the type an {@code Object} is cast to before being passed to a setter taking {@code type}
+     */
+    private String castType(final TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private static String accessors(final String packageName, final Map<TypeElement, Map<String, Property>> resources) {
+        final StringBuilder source = header(packageName);
+        source.append("import java.beans.PropertyDescriptor;\n\n")
+                .append("import io.apptitan.jsonapi.JsonApiAccessorStrategy;\n")
+                .append("import io.apptitan.jsonapi.JsonApiAccessors;\n")
+                .append("import io.apptitan.jsonapi.JsonApiPropertyAccessor;\n\n")
+                .append("/**\n")
+                .append(" * Calls the getters and setters of the JSON API resources in this package directly.\n")
+                .append(" * Generated by ").append(JsonApiProcessor.class.getName()).append(", do not edit.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n")
+                .append("public final class ").append(ACCESSORS).append(" implements JsonApiAccessorStrategy {\n\n")
+                .append("    public static final JsonApiAccessorStrategy INSTANCE = new ").append(ACCESSORS)
+                .append("();\n\n")
+                .append("    private ").append(ACCESSORS).append("() {\n")
+                .append("        // Intentionally private\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public JsonApiPropertyAccessor accessor(final Class<?> type, final PropertyDescriptor descriptor) {\n");
+        int index = 0;
+        for (final TypeElement resource : resources.keySet()) {
+            source.append("        if (type == ").append(resource.getQualifiedName()).append(".class) {\n")
+                    .append("            return resource").append(index++).append("(type, descriptor);\n")
+                    .append("        }\n");
+        }
+        source.append("        return JsonApiAccessors.METHOD_HANDLES.accessor(type, descriptor);\n")
+                .append("    }\n");
+
+        index = 0;
+        for (final Map.Entry<TypeElement, Map<String, Property>> resource : resources.entrySet()) {
+            final String type = resource.getKey().getQualifiedName().toString();
+            source.append("\n    private static JsonApiPropertyAccessor resource").append(index++)
+                    .append("(final Class<?> type, final PropertyDescriptor descriptor) {\n")
+                    .append("        switch (descriptor.getName()) {\n");
+            for (final Map.Entry<String, Property> entry : resource.getValue().entrySet()) {
+                final Property property = entry.getValue();
+                source.append("        case \"").append(entry.getKey()).append("\":\n")
+                        .append("            return new JsonApiPropertyAccessor() {\n")
+                        .append("                @Override\n")
+                        .append("                public Object get(final Object target) throws ReflectiveOperationException {\n");
+                if (property.getter != null) {
+                    source.append("                    return ((").append(type).append(") target).")
+                            .append(property.getter).append("();\n");
+                } else {
+                    source.append("                    throw new NoSuchMethodException(\"Property '").append(entry.getKey())
+                            .append("' has no getter method in class '").append(type).append("'\");\n");
+                }
+                source.append("                }\n\n")
+                        .append("                @Override\n")
+                        .append("                public void set(final Object target, final Object value) throws ReflectiveOperationException {\n");
+                if (property.setter != null) {
+                    source.append("                    ((").append(type).append(") target).").append(property.setter)
+                            .append("((").append(property.setterType).append(") value);\n");
+                } else {
+                    source.append("                    throw new NoSuchMethodException(\"Property '").append(entry.getKey())
+                            .append("' has no setter method in class '").append(type).append("'\");\n");
+                }
+                source.append("                }\n")
+                        .append("            };\n");
+            }
+            source.append("        default:\n")
+                    .append("            return JsonApiAccessors.METHOD_HANDLES.accessor(type, descriptor);\n")
+                    .append("        }\n")
+                    .append("    }\n");
+        }
+        return source.append("}\n").toString();
+    }
+
+    private static String module(final String packageName, final List<TypeElement> resources) {
+        final StringBuilder source = header(packageName);
+        source.append("import com.fasterxml.jackson.databind.JsonDeserializer;\n")
+                .append("import com.fasterxml.jackson.databind.JsonSerializer;\n")
+                .append("import com.fasterxml.jackson.databind.module.SimpleModule;\n\n")
+                .append("import io.apptitan.jsonapi.JsonApiAccessorStrategy;\n")
+                .append("import io.apptitan.jsonapi.JsonApiDeserializer;\n")
+                .append("import io.apptitan.jsonapi.JsonApiSerializer;\n\n")
+                .append("/**\n")
+                .append(" * Registers a serializer and deserializer for each JSON API resource in this package, reading and\n")
+                .append(" * writing properties through {@link ").append(ACCESSORS).append("}.\n")
+                .append(" * Generated by ").append(JsonApiProcessor.class.getName()).append(", do not edit.\n")
+                .append(" */\n")
+                .append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(MODULE).append(" extends SimpleModule {\n\n")
+                .append("    private static final long serialVersionUID = 1L;\n\n")
+                .append("    public ").append(MODULE).append("() {\n")
+                .append("        super(").append(MODULE).append(".class.getName());\n")
+                .append("        final JsonSerializer<Object> serializer = new JsonApiSerializer() {\n")
+                .append("            @Override\n")
+                .append("            protected JsonApiAccessorStrategy accessorStrategy() {\n")
+                .append("                return ").append(ACCESSORS).append(".INSTANCE;\n")
+                .append("            }\n")
+                .append("        };\n")
+                .append("        final JsonDeserializer<Object> deserializer = new JsonApiDeserializer() {\n")
+                .append("            @Override\n")
+                .append("            protected JsonApiAccessorStrategy accessorStrategy() {\n")
+                .append("                return ").append(ACCESSORS).append(".INSTANCE;\n")
+                .append("            }\n")
+                .append("        };\n");
+        for (final TypeElement resource : resources) {
+            source.append("        addSerializer(").append(resource.getQualifiedName()).append(".class, serializer);\n");
+            if (!resource.getModifiers().contains(Modifier.ABSTRACT)) {
+                source.append("        addDeserializer((Class<Object>) (Class<?>) ").append(resource.getQualifiedName())
+                        .append(".class, deserializer);\n");
+            }
+        }
+        source.append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return native-image reflection configuration for the fields, annotations and constructors of every resource
+     *         and its superclasses, which are still discovered reflectively
+     */
+    private String reflectConfig(final List<TypeElement> resources) {
+        final Set<String> names = new LinkedHashSet<>();
+        for (final TypeElement resource : resources) {
+            for (TypeElement current = resource; (current != null) && !isObject(current); current = superclass(current)) {
+                names.add(processingEnv.getElementUtils().getBinaryName(current).toString());
+            }
+        }
+
+        final StringBuilder config = new StringBuilder("[\n");
+        String separator = "";
+        for (final String name : names) {
+            config.append(separator)
+                    .append("  {\n")
+                    .append("    \"name\": \"").append(name).append("\",\n")
+                    .append("    \"allDeclaredFields\": true,\n")
+                    .append("    \"allDeclaredMethods\": true,\n")
+                    .append("    \"allPublicMethods\": true,\n")
+                    .append("    \"allDeclaredConstructors\": true\n")
+                    .append("  }");
+            separator = ",\n";
+        }
+        return config.append("\n]\n").toString();
+    }
+
+    private static StringBuilder header(final String packageName) {
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        return source;
+    }
+}
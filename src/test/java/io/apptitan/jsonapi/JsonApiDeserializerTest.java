@@ -0,0 +1,479 @@
+package io.apptitan.jsonapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import io.apptitan.jsonapi.JsonApiSerializerTest.BlogPost;
+import io.apptitan.jsonapi.JsonApiSerializerTest.Person;
+import io.apptitan.jsonapi.JsonApiSerializerTest.Status;
+
+public class JsonApiDeserializerTest {
+
+    public static class Venue {
+        @Id
+        private UUID id;
+
+        public UUID getId() {
+            return id;
+        }
+
+        public void setId(final UUID id) {
+            this.id = id;
+        }
+    }
+
+    public static class Event {
+        private Date startsAt;
+        @ManyToOne
+        private Venue venue;
+        private BigDecimal price;
+        private UUID uuid;
+        private List<String> tags;
+
+        public Date getStartsAt() {
+            return startsAt;
+        }
+
+        public void setStartsAt(final Date startsAt) {
+            this.startsAt = startsAt;
+        }
+
+        public Venue getVenue() {
+            return venue;
+        }
+
+        public void setVenue(final Venue venue) {
+            this.venue = venue;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public void setPrice(final BigDecimal price) {
+            this.price = price;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public void setUuid(final UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(final List<String> tags) {
+            this.tags = tags;
+        }
+    }
+
+    public static class Roster {
+        @Id
+        private Long id;
+        @OneToMany
+        private LinkedList<Person> members;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public LinkedList<Person> getMembers() {
+            return members;
+        }
+
+        public void setMembers(final LinkedList<Person> members) {
+            this.members = members;
+        }
+    }
+
+    private ObjectMapper mapper;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) BlogPost.class, new JsonApiDeserializer());
+        module.addDeserializer((Class<Object>) (Class<?>) Event.class, new JsonApiDeserializer());
+        mapper = new ObjectMapper().registerModule(module);
+    }
+
+    @Test
+    public void attributesAreDeserialized() throws Exception {
+        final BlogPost post = mapper.readValue(
+                "{\"data\":{\"type\":\"blog-posts\",\"attributes\":{\"title\":\"Hello\",\"unknown\":{\"a\":[1]}}}}",
+                BlogPost.class);
+
+        assertEquals("Hello", post.getTitle());
+    }
+
+    @Test
+    public void datesAreReadAsEpochMillis() throws Exception {
+        final Event event = mapper.readValue(
+                "{\"data\":{\"attributes\":{\"starts-at\":1444435200042}}}", Event.class);
+
+        assertEquals(new Date(1444435200042L), event.getStartsAt());
+    }
+
+    @Test
+    public void otherAttributeTypesAreReadByJackson() throws Exception {
+        final Event event = mapper.readValue("{\"data\":{\"attributes\":{\"price\":\"12.50\","
+                + "\"uuid\":\"0f8fad5b-d9cb-469f-a165-70867728950e\",\"tags\":[\"a\",\"b\"]}}}", Event.class);
+
+        assertEquals(new BigDecimal("12.50"), event.getPrice());
+        assertEquals(UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e"), event.getUuid());
+        assertEquals(Arrays.asList("a", "b"), event.getTags());
+    }
+
+    @Test
+    public void invalidAttributesFailWithAPointerToTheMember() throws Exception {
+        try {
+            mapper.readValue("{\"data\":{\"attributes\":{\"uuid\":\"not-a-uuid\"}}}", Event.class);
+            fail();
+        } catch (final JsonApiException e) {
+            assertEquals("400", e.getStatus());
+            assertEquals("/data/attributes/uuid", e.getPointer());
+        }
+    }
+
+    @Test
+    public void numbersAndBooleansAreNotCoerced() throws Exception {
+        assertEquals(12L, read(JsonApiAttributeConverters.LONG, "\"12\""));
+        assertEquals(12, read(JsonApiAttributeConverters.INTEGER, "12.0"));
+        assertEquals(12.9, read(JsonApiAttributeConverters.DOUBLE, "\"12.9\""));
+        assertEquals(true, read(JsonApiAttributeConverters.BOOLEAN, "\"true\""));
+        assertEquals(0L, read(JsonApiAttributeConverters.PRIMITIVE_LONG, "null"));
+        assertNull(read(JsonApiAttributeConverters.LONG, "null"));
+
+        for (final String value : Arrays.asList("\"abc\"", "\"12.9\"", "12.9", "{\"a\":1}", "[1]", "true")) {
+            assertInvalid(JsonApiAttributeConverters.LONG, value);
+            assertInvalid(JsonApiAttributeConverters.PRIMITIVE_INT, value);
+        }
+        assertInvalid(JsonApiAttributeConverters.INTEGER, "3000000000");
+        assertInvalid(JsonApiAttributeConverters.LONG, "30000000000000000000");
+        assertInvalid(JsonApiAttributeConverters.DOUBLE, "\"abc\"");
+        assertInvalid(JsonApiAttributeConverters.PRIMITIVE_DOUBLE, "false");
+        assertInvalid(JsonApiAttributeConverters.BOOLEAN, "\"yes\"");
+        assertInvalid(JsonApiAttributeConverters.PRIMITIVE_BOOLEAN, "1");
+        assertInvalid(JsonApiAttributeConverters.STRING, "{\"a\":1}");
+    }
+
+    private Object read(final JsonApiAttributeConverter converter, final String value) throws Exception {
+        final JsonParser jp = mapper.getFactory().createParser(value);
+        jp.nextToken();
+        return converter.read(jp);
+    }
+
+    private void assertInvalid(final JsonApiAttributeConverter converter, final String value) throws Exception {
+        try {
+            read(converter, value);
+            fail(value);
+        } catch (final JsonMappingException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void jacksonAttributesAreReadWithTheFeaturesOfTheReader() throws Exception {
+        final Event event = mapper.readerFor(Event.class).with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+                .readValue("{\"data\":{\"attributes\":{\"tags\":\"a\"}}}");
+
+        assertEquals(Arrays.asList("a"), event.getTags());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void lenientReadsCarryOnAfterAValueThatFailedPartWay() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) Event.class, new JsonApiDeserializer() {
+            @Override
+            protected JsonApiErrorPolicy errorPolicy() {
+                return JsonApiErrorPolicy.LENIENT;
+            }
+        });
+
+        final Event event = new ObjectMapper().registerModule(module).readValue("{\"data\":{\"attributes\":{"
+                + "\"tags\":[\"a\",{\"b\":[1]},\"c\"],\"price\":\"1.5\"}}}", Event.class);
+
+        assertNull(event.getTags());
+        assertEquals(new BigDecimal("1.5"), event.getPrice());
+    }
+
+    @Test
+    public void nullDataIsReadAsNull() throws Exception {
+        assertNull(mapper.readValue("{\"data\":null}", BlogPost.class));
+    }
+
+    @Test
+    public void missingOrInvalidDataFailsWithAPointerToData() throws Exception {
+        for (final String json : Arrays.asList("{\"meta\":{}}", "{\"data\":[]}", "{\"data\":\"x\"}")) {
+            try {
+                mapper.readValue(json, BlogPost.class);
+                fail(json);
+            } catch (final JsonApiException e) {
+                assertEquals("400", e.getStatus());
+                assertEquals("/data", e.getPointer());
+            }
+        }
+    }
+
+    @Test
+    public void relationshipsAreDeserialized() throws Exception {
+        final BlogPost post = mapper.readValue("{\"data\":{\"relationships\":{"
+                + "\"author\":{\"links\":{\"self\":\"/x\"},\"data\":{\"id\":\"12\",\"type\":\"persons\"}},"
+                + "\"status\":{\"data\":{\"type\":\"statuses\",\"id\":\"DRAFT\"}}}}}", BlogPost.class);
+
+        assertEquals(Long.valueOf(12), post.getAuthor().getId());
+        assertNull(post.getAuthor().getFirstName());
+        assertEquals(Status.DRAFT, post.getStatus());
+    }
+
+    @Test
+    public void relationshipIdsAreConvertedToTheIdType() throws Exception {
+        final Event event = mapper.readValue("{\"data\":{\"relationships\":{\"venue\":{\"data\":"
+                + "{\"type\":\"venues\",\"id\":\"0f8fad5b-d9cb-469f-a165-70867728950e\"}}}}}", Event.class);
+
+        assertEquals(UUID.fromString("0f8fad5b-d9cb-469f-a165-70867728950e"), event.getVenue().getId());
+    }
+
+    @Test
+    public void invalidRelationshipIdsFailWithAPointerToTheRelationship() throws Exception {
+        try {
+            mapper.readValue("{\"data\":{\"relationships\":{"
+                    + "\"author\":{\"data\":{\"type\":\"persons\",\"id\":\"abc\"}}}}}", BlogPost.class);
+            fail();
+        } catch (final JsonApiException e) {
+            assertEquals("400", e.getStatus());
+            assertEquals("/data/relationships/author", e.getPointer());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void invalidRelationshipIdsAreSkippedWhenLenient() throws Exception {
+        final List<JsonApiException> skipped = new ArrayList<>();
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) BlogPost.class, new JsonApiDeserializer() {
+            @Override
+            protected JsonApiErrorPolicy errorPolicy() {
+                return JsonApiErrorPolicy.LENIENT;
+            }
+
+            @Override
+            protected void memberSkipped(final JsonApiException exception) {
+                skipped.add(exception);
+            }
+        });
+
+        final BlogPost post = new ObjectMapper().registerModule(module).readValue("{\"data\":{\"relationships\":{"
+                + "\"author\":{\"data\":{\"id\":\"x\",\"type\":\"persons\"},\"meta\":{}},"
+                + "\"status\":{\"data\":{\"type\":\"statuses\",\"id\":\"DRAFT\"}}}}}", BlogPost.class);
+
+        assertNull(post.getAuthor());
+        assertEquals(Status.DRAFT, post.getStatus());
+        assertEquals(1, skipped.size());
+        assertEquals("/data/relationships/author", skipped.get(0).getPointer());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void relationshipsAreSetToStubsFromTheStubFactory() throws Exception {
+        final Person cached = new Person();
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) BlogPost.class, new JsonApiDeserializer() {
+            @Override
+            protected JsonApiStubFactory stubFactory() {
+                return (type, id) -> (type == Person.class) && Long.valueOf(12).equals(id) ? cached : null;
+            }
+        });
+
+        final BlogPost post = new ObjectMapper().registerModule(module).readValue(
+                "{\"data\":{\"relationships\":{\"author\":{\"data\":{\"type\":\"persons\",\"id\":\"12\"}}}}}",
+                BlogPost.class);
+
+        assertSame(cached, post.getAuthor());
+    }
+
+    @Test
+    public void membersMayArriveInAnyOrder() throws Exception {
+        final BlogPost post = mapper.readValue("{\"meta\":{\"page\":1},\"data\":{"
+                + "\"attributes\":{\"title\":\"Hello\"},\"id\":\"7\",\"type\":\"blog-posts\"},\"jsonapi\":{\"version\":1}}",
+                BlogPost.class);
+
+        assertEquals("Hello", post.getTitle());
+    }
+
+    @Test
+    public void dataArraysAndOperationsAreReadInOrder() throws Exception {
+        final List<BlogPost> posts = new JsonApiDeserializer().readAll(mapper.getFactory().createParser(
+                "{\"atomic:operations\":[{\"op\":\"add\",\"data\":{\"attributes\":{\"title\":\"First\"}}},"
+                        + "{\"op\":\"remove\",\"ref\":{\"type\":\"blog-posts\",\"id\":\"1\"}},"
+                        + "{\"op\":\"update\",\"data\":{\"attributes\":{\"title\":\"Second\"}}}]}"),
+                BlogPost.class);
+
+        assertEquals(2, posts.size());
+        assertEquals("First", posts.get(0).getTitle());
+        assertEquals("Second", posts.get(1).getTitle());
+    }
+
+    @Test
+    public void largeBatchesCanBeMaterializedOnAnExecutor() throws Exception {
+        final StringBuilder document = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 1000; i++) {
+            document.append(i == 0 ? "" : ",").append("{\"attributes\":{\"title\":\"").append(i).append("\"},")
+                    .append("\"relationships\":{\"author\":{\"data\":{\"type\":\"persons\",\"id\":\"")
+                    .append(i).append("\"}}}}");
+        }
+        document.append("]}");
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<BlogPost> posts = new JsonApiDeserializer().readAll(
+                    mapper.getFactory().createParser(document.toString()), BlogPost.class, executor);
+
+            assertEquals(1000, posts.size());
+            for (int i = 0; i < posts.size(); i++) {
+                assertEquals(String.valueOf(i), posts.get(i).getTitle());
+                assertEquals(Long.valueOf(i), posts.get(i).getAuthor().getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void batchesAreNotMaterializedOnceTheDocumentHasFailed() throws Exception {
+        final StringBuilder document = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 600; i++) {
+            document.append(i == 0 ? "" : ",").append("{\"attributes\":{\"uuid\":\"")
+                    .append(i == 0 ? "not-a-uuid" : "0f8fad5b-d9cb-469f-a165-70867728950e").append("\"}}");
+        }
+        document.append("]}");
+        final AtomicInteger read = new AtomicInteger();
+        final JsonApiDeserializer deserializer = new JsonApiDeserializer() {
+            @Override
+            protected JsonApiListener listener() {
+                return new JsonApiListener() {
+                    @Override
+                    public void resourceRead(final Class<?> type, final long nanos) {
+                        read.incrementAndGet();
+                    }
+                };
+            }
+        };
+        // The first batch fails as soon as it is submitted, the others wait until the document has failed
+        final List<Runnable> waiting = new ArrayList<>();
+        final AtomicBoolean first = new AtomicBoolean(true);
+        final Executor executor = task -> {
+            if (first.getAndSet(false)) {
+                task.run();
+            } else {
+                waiting.add(task);
+            }
+        };
+
+        try {
+            deserializer.readAll(mapper.getFactory().createParser(document.toString()), Event.class, executor);
+            fail();
+        } catch (final JsonApiException e) {
+            assertEquals("/attributes/uuid", e.getPointer());
+        }
+        waiting.forEach(Runnable::run);
+
+        assertEquals(2, waiting.size());
+        assertEquals(0, read.get());
+    }
+
+    @Test
+    public void toManyLinkageIsOnlyReadFromCompoundDocuments() throws Exception {
+        final BlogPost post = mapper.readValue("{\"data\":{\"relationships\":{"
+                + "\"comments\":{\"data\":[{\"type\":\"persons\",\"id\":\"1\"}]}}}}", BlogPost.class);
+
+        assertEquals(0, post.getComments().size());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void toManyLinkageIsReadIntoTheDeclaredCollectionType() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) Roster.class, new JsonApiDeserializer() {
+            @Override
+            protected boolean linkIncluded() {
+                return true;
+            }
+        });
+
+        final Roster roster = new ObjectMapper().registerModule(module).readValue("{\"data\":{\"relationships\":{"
+                + "\"members\":{\"data\":[{\"type\":\"persons\",\"id\":\"1\"},{\"type\":\"persons\",\"id\":\"2\"}]}}},"
+                + "\"included\":[{\"type\":\"persons\",\"id\":\"2\",\"attributes\":{\"first-name\":\"Grace\"}}]}",
+                Roster.class);
+
+        assertEquals(2, roster.getMembers().size());
+        assertEquals(Long.valueOf(1), roster.getMembers().getFirst().getId());
+        assertEquals("Grace", roster.getMembers().getLast().getFirstName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void includedResourcesAreLinkedOneInstancePerIdentity() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addDeserializer((Class<Object>) (Class<?>) BlogPost.class, new JsonApiDeserializer() {
+            @Override
+            protected boolean linkIncluded() {
+                return true;
+            }
+        });
+
+        final BlogPost post = new ObjectMapper().registerModule(module).readValue("{\"included\":["
+                + "{\"attributes\":{\"first-name\":\"Ada\"},\"type\":\"persons\",\"id\":\"12\"},"
+                + "{\"type\":\"planets\",\"id\":\"3\"}],"
+                + "\"data\":{\"type\":\"blog-posts\",\"id\":\"7\",\"relationships\":{"
+                + "\"author\":{\"data\":{\"type\":\"persons\",\"id\":\"12\"}},"
+                + "\"comments\":{\"data\":[{\"type\":\"persons\",\"id\":12},{\"type\":\"persons\",\"id\":\"13\"},"
+                + "{\"type\":\"persons\",\"id\":\"13\"}]}}}}", BlogPost.class);
+
+        assertEquals(Long.valueOf(7), post.getId());
+        assertEquals("Ada", post.getAuthor().getFirstName());
+        assertEquals(Long.valueOf(12), post.getAuthor().getId());
+        assertEquals(3, post.getComments().size());
+        assertSame(post.getAuthor(), post.getComments().get(0));
+        assertEquals(Long.valueOf(13), post.getComments().get(1).getId());
+        assertNull(post.getComments().get(1).getFirstName());
+        assertSame(post.getComments().get(1), post.getComments().get(2));
+    }
+}
@@ -0,0 +1,40 @@
+package io.apptitan.jsonapi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.apptitan.jsonapi.JsonApiSerializerTest.Author;
+import io.apptitan.jsonapi.JsonApiSerializerTest.BlogPost;
+import io.apptitan.jsonapi.JsonApiSerializerTest.Person;
+
+public class JsonApiModuleTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JsonApiModule().addResources(Person.class,
+            BlogPost.class));
+
+    @Test
+    public void registeredAndAnnotatedClassesAreResources() throws Exception {
+        final Author author = new Author();
+        author.setId(2L);
+        final JsonNode document = mapper.readTree(mapper.writeValueAsString(new JsonApiResponse.Builder(author).build()));
+
+        assertEquals("writers", document.get("data").get("type").asText());
+        assertEquals("Ada", mapper.readValue("{\"data\":{\"attributes\":{\"first-name\":\"Ada\"}}}", Person.class)
+                .getFirstName());
+    }
+
+    @Test
+    public void deserializersAreBoundOncePerType() {
+        final JsonApiDeserializer deserializer = new JsonApiDeserializer();
+
+        assertSame(deserializer.forType(Person.class), deserializer.forType(Person.class));
+        assertNotSame(deserializer.forType(Person.class), deserializer.forType(BlogPost.class));
+        assertEquals(BlogPost.class, deserializer.forType(BlogPost.class).handledType());
+    }
+}
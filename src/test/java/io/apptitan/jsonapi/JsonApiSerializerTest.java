@@ -1,36 +1,962 @@
 package io.apptitan.jsonapi;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Version;
+
+import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
 public class JsonApiSerializerTest {
 
+    public static class Person {
+        @Id
+        private Long id;
+        private String firstName;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public void setFirstName(final String firstName) {
+            this.firstName = firstName;
+        }
+    }
+
+    public enum Status {
+        DRAFT, PUBLISHED
+    }
+
+    public static class BlogPost {
+        @Id
+        private Long id;
+        private String title;
+        private Status status;
+        @ManyToOne
+        private Person author;
+        @OneToMany
+        private List<Person> comments = new ArrayList<>();
+        private Map<String, Object> meta;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(final String title) {
+            this.title = title;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public void setStatus(final Status status) {
+            this.status = status;
+        }
+
+        public Person getAuthor() {
+            return author;
+        }
+
+        public void setAuthor(final Person author) {
+            this.author = author;
+        }
+
+        public List<Person> getComments() {
+            return comments;
+        }
+
+        public void setComments(final List<Person> comments) {
+            this.comments = comments;
+        }
+
+        public Map<String, Object> getMeta() {
+            return meta;
+        }
+
+        public void setMeta(final Map<String, Object> meta) {
+            this.meta = meta;
+        }
+    }
+
+    public static class Discussion {
+        @Id
+        private Long id;
+        @HasMany(lazy = false)
+        private List<Person> participants = new ArrayList<>();
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(final Long id) {
+            this.id = id;
+        }
+
+        public List<Person> getParticipants() {
+            return participants;
+        }
+
+        public void setParticipants(final List<Person> participants) {
+            this.participants = participants;
+        }
+    }
+
+    @JsonApiResource(singular = "writer", plural = "writers")
+    public static class Author extends Person {
+    }
+
+    /**
+     * Stands in for a proxy whose id getter would load it
+     */
+    public static class UnloadedPerson extends Person {
+        @Override
+        public Long getId() {
+            throw new IllegalStateException("Loaded " + super.getId());
+        }
+    }
+
+    public static class Unreadable {
+        @Id
+        private Long id = 1L;
+        private String name = "x";
+        private String secret;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getSecret() {
+            throw new IllegalStateException("Not allowed");
+        }
+    }
+
+    public static class Plan {
+        @Id
+        private Long id;
+        private String name;
+        @Version
+        private Integer version;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Integer getVersion() {
+            return version;
+        }
+    }
+
+    public static class UnreadablePlan extends Plan {
+        @Override
+        public String getName() {
+            throw new IllegalStateException("Not allowed");
+        }
+    }
+
+    public static class Category {
+        @Id
+        private Long id;
+        private Category parent;
+        @OneToMany
+        private List<Category> children = new ArrayList<>();
+
+        public Long getId() {
+            return id;
+        }
+
+        public Category getParent() {
+            return parent;
+        }
+
+        public List<Category> getChildren() {
+            return children;
+        }
+    }
+
+    public static class Team {
+        @Id
+        private Long id;
+        @Version
+        private Integer version;
+        @HasMany(lazy = false)
+        private List<Person> members = new ArrayList<>();
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getVersion() {
+            return version;
+        }
+
+        public List<Person> getMembers() {
+            return members;
+        }
+    }
+
+    public static class Sponsorship {
+        @Id
+        private Long id;
+        @Version
+        private Integer version;
+        private Person sponsor;
+
+        public Long getId() {
+            return id;
+        }
+
+        public Integer getVersion() {
+            return version;
+        }
+
+        public Person getSponsor() {
+            return sponsor;
+        }
+    }
+
+    public static class Meeting {
+        @Id
+        private Long id;
+        private Date startsAt;
+
+        public Meeting(final long id, final Date startsAt) {
+            this.id = id;
+            this.startsAt = startsAt;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Date getStartsAt() {
+            return startsAt;
+        }
+    }
+
+    private ObjectMapper mapper;
+
+    @Before
+    public void setUp() {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Person.class, new JsonApiSerializer());
+        module.addSerializer(BlogPost.class, new JsonApiSerializer());
+        module.addSerializer(Author.class, new JsonApiSerializer());
+        mapper = new ObjectMapper().registerModule(module);
+    }
+
+    private static Person person(final long id, final String firstName) {
+        final Person person = new Person();
+        person.setId(id);
+        person.setFirstName(firstName);
+        return person;
+    }
+
+    private static BlogPost post() {
+        final BlogPost post = new BlogPost();
+        post.setId(7L);
+        post.setTitle("Hello");
+        post.setStatus(Status.PUBLISHED);
+        post.setAuthor(person(1, "Ada"));
+        return post;
+    }
+
+    private JsonNode write(final Object value) throws Exception {
+        return mapper.readTree(mapper.writeValueAsString(value));
+    }
+
+    @Test
+    public void attributesAreSerialized() throws Exception {
+        final JsonNode json = write(person(1, "Ada"));
+
+        assertEquals("1", json.get("id").asText());
+        assertEquals("persons", json.get("type").asText());
+        assertEquals("/jsonapi/persons/1", json.get("links").get("self").asText());
+        assertEquals("Ada", json.get("attributes").get("first-name").asText());
+        assertFalse(json.get("attributes").has("id"));
+    }
+
+    @Test
+    public void belongsToAreSerialized() throws Exception {
+        final JsonNode relationships = write(post()).get("relationships");
+
+        assertEquals("persons", relationships.get("author").get("data").get("type").asText());
+        assertEquals("1", relationships.get("author").get("data").get("id").asText());
+        assertEquals("PUBLISHED", relationships.get("status").get("data").get("id").asText());
+        assertEquals("/jsonapi/blog-posts/7/relationships/person",
+                relationships.get("author").get("links").get("self").asText());
+    }
+
+    @Test
+    public void canRenameAResource() throws Exception {
+        final Author author = new Author();
+        author.setId(3L);
+        author.setFirstName("Grace");
+
+        final JsonNode json = write(author);
+
+        assertEquals("writers", json.get("type").asText());
+        assertEquals("/jsonapi/writers/3", json.get("links").get("self").asText());
+        assertEquals("Grace", json.get("attributes").get("first-name").asText());
+    }
+
+    @Test
+    public void hasManyAreSerialized() throws Exception {
+        final JsonNode comments = write(post()).get("relationships").get("comments");
+
+        assertEquals("/jsonapi/blog-posts/7/persons", comments.get("links").get("related").asText());
+        assertEquals("/jsonapi/blog-posts/7/relationships/persons", comments.get("links").get("self").asText());
+        assertFalse(comments.has("data"));
+    }
+
     @Test
-    public void attributesAreSerialized() {
+    public void hasManyLinkageIsWrittenWhenNotLazy() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Discussion.class, new JsonApiSerializer() {
+            @Override
+            protected int maxLinkage() {
+                return 2;
+            }
+        });
+        final ObjectMapper linkageMapper = new ObjectMapper().registerModule(module);
+        final Discussion discussion = new Discussion();
+        discussion.setId(3L);
+        discussion.setParticipants(Arrays.asList(person(1, "Ada"), person(2, "Grace"), person(4, "Edsger")));
+
+        final JsonNode participants = linkageMapper.readTree(linkageMapper.writeValueAsString(discussion))
+                .get("relationships").get("participants");
 
+        assertEquals(2, participants.get("data").size());
+        assertEquals("persons", participants.get("data").get(0).get("type").asText());
+        assertEquals("2", participants.get("data").get(1).get("id").asText());
+        assertEquals(3, participants.get("meta").get("count").asInt());
     }
 
     @Test
-    public void belongsToAreSerialized() {
+    public void linkageStopsReadingAtTheMaximum() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Discussion.class, new JsonApiSerializer() {
+            @Override
+            protected int maxLinkage() {
+                return 2;
+            }
+        });
+        final ObjectMapper linkageMapper = new ObjectMapper().registerModule(module);
+        final Discussion discussion = new Discussion();
+        discussion.setId(3L);
+        discussion.setParticipants(new AbstractList<Person>() {
+            @Override
+            public Person get(final int index) {
+                if (index >= 2) {
+                    throw new IllegalStateException("Read participant " + index);
+                }
+                return person(index, "Person " + index);
+            }
+
+            @Override
+            public int size() {
+                return 100000;
+            }
+        });
 
+        final JsonNode participants = linkageMapper.readTree(linkageMapper.writeValueAsString(discussion))
+                .get("relationships").get("participants");
+
+        assertEquals(2, participants.get("data").size());
+        assertEquals(100000, participants.get("meta").get("count").asInt());
     }
 
     @Test
-    public void canRenameAResource() {
+    public void jsonApiVerionsIsGenerated() throws Exception {
+        final JsonNode json = write(new JsonApiResponse.Builder(person(1, "Ada")).build());
 
+        assertEquals(1, json.get("jsonapi").get("version").asInt());
+        assertEquals("Ada", json.get("data").get("attributes").get("first-name").asText());
     }
 
     @Test
-    public void hasManyAreSerialized() {
+    public void membersAreWrittenInOrderWithoutEmptyOnes() throws Exception {
+        final Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("total", 1);
+        final List<String> names = new ArrayList<>();
+        write(new JsonApiResponse.Builder(person(1, "Ada")).meta(meta).build()).fieldNames()
+                .forEachRemaining(names::add);
+        assertEquals(Arrays.asList("jsonapi", "data", "meta"), names);
 
+        names.clear();
+        write(new JsonApiResponse.Builder(post()).includePaths("comments").build()).fieldNames()
+                .forEachRemaining(names::add);
+        assertEquals(Arrays.asList("jsonapi", "data"), names);
     }
 
     @Test
-    public void jsonApiVerionsIsGenerated() {
+    public void collectionsAreSerialized() throws Exception {
+        final JsonNode fromList = write(new JsonApiResponse.Builder(
+                Arrays.asList(person(1, "Ada"), person(2, "Grace"))).flushEvery(1).build()).get("data");
+        final JsonNode fromStream = write(new JsonApiResponse.Builder(
+                Stream.of(person(1, "Ada"), person(2, "Grace"))).build()).get("data");
 
+        assertEquals(2, fromList.size());
+        assertEquals("Grace", fromList.get(1).get("attributes").get("first-name").asText());
+        assertEquals(fromList, fromStream);
     }
 
     @Test
-    public void metaIsSerialized() {
+    public void includedResourcesAreWrittenOnce() throws Exception {
+        final BlogPost first = post();
+        first.getComments().add(person(2, "Grace"));
+        first.getComments().add(person(1, "Ada"));
+        final BlogPost second = post();
+        second.setId(8L);
+
+        final JsonNode json = write(new JsonApiResponse.Builder(Arrays.asList(first, second, person(2, "Grace")))
+                .includePaths("author", "comments").build());
+
+        assertEquals(3, json.get("data").size());
+        assertEquals(1, json.get("included").size());
+        assertEquals("1", json.get("included").get(0).get("id").asText());
+    }
+
+    @Test
+    public void sparseFieldsetsLimitWrittenFields() throws Exception {
+        final JsonNode json = write(new JsonApiResponse.Builder(post())
+                .fields("blog-posts", "title,author").fields("persons", "").includePaths("author").build());
+        final JsonNode data = json.get("data");
+
+        assertEquals(1, data.get("attributes").size());
+        assertEquals("Hello", data.get("attributes").get("title").asText());
+        assertEquals(1, data.get("relationships").size());
+        assertEquals("1", data.get("relationships").get("author").get("data").get("id").asText());
+        assertEquals(0, json.get("included").get(0).get("attributes").size());
+    }
+
+    @Test
+    public void fieldsetsAreNotChangedByTheBuilderAfterBuild() throws Exception {
+        final JsonApiResponse.Builder builder = new JsonApiResponse.Builder(post()).fields("blog-posts", "title");
+        final JsonApiResponse response = builder.build();
+        builder.fields("blog-posts", "author");
+
+        final JsonNode data = write(response).get("data");
+
+        assertEquals(1, data.get("attributes").size());
+        assertEquals(0, data.get("relationships").size());
+    }
+
+    @Test
+    public void metaIsSerialized() throws Exception {
+        final BlogPost post = post();
+        post.setMeta(Collections.singletonMap("views", 3));
+
+        final JsonNode json = write(post);
+
+        assertEquals(3, json.get("meta").get("views").asInt());
+        assertFalse(json.get("attributes").has("meta"));
+    }
+
+    @Test
+    public void accessorStrategiesProduceTheSameDocument() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Person.class, new JsonApiSerializer());
+        module.addSerializer(BlogPost.class, new JsonApiSerializer() {
+            @Override
+            protected JsonApiAccessorStrategy accessorStrategy() {
+                return JsonApiAccessors.BEAN_UTILS;
+            }
+        });
+        final ObjectMapper beanUtilsMapper = new ObjectMapper().registerModule(module);
+
+        assertEquals(write(post()), beanUtilsMapper.readTree(beanUtilsMapper.writeValueAsString(post())));
+    }
+
+    @Test
+    public void relationshipMapsAreCachedPerClass() {
+        final JsonApiRelationshipCache cache = JsonApiRelationshipCache.of(
+                JsonApiRelationshipMap.ID_ANNOTATIONS,
+                JsonApiRelationshipMap.BELONGS_TO_ANNOTATIONS,
+                JsonApiRelationshipMap.HAS_MANY_ANNOTATIONS,
+                JsonApiAccessors.METHOD_HANDLES);
+
+        assertSame(cache.get(BlogPost.class), cache.get(BlogPost.class));
+        assertEquals("id", cache.get(BlogPost.class).getIdAttribute().getName());
+    }
+
+    @Test
+    public void belongsToIdsAreReadThroughTheIdentifierResolver() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(BlogPost.class, new JsonApiSerializer() {
+            @Override
+            protected JsonApiIdentifierResolver identifierResolver() {
+                return new JsonApiIdentifierResolver() {
+                    @Override
+                    public Object identifier(final Object resource) {
+                        return (resource instanceof UnloadedPerson) ? 5L : null;
+                    }
+
+                    @Override
+                    public Class<?> resourceClass(final Object resource) {
+                        return (resource instanceof UnloadedPerson) ? Person.class : resource.getClass();
+                    }
+                };
+            }
+        });
+        final ObjectMapper proxyMapper = new ObjectMapper().registerModule(module);
+        final BlogPost post = post();
+        post.setAuthor(new UnloadedPerson());
+
+        final JsonNode author = proxyMapper.readTree(proxyMapper.writeValueAsString(post))
+                .get("relationships").get("author").get("data");
+
+        assertEquals("persons", author.get("type").asText());
+        assertEquals("5", author.get("id").asText());
+    }
+
+    @Test
+    public void unreadableMembersAreSkippedWhenLenient() throws Exception {
+        final List<JsonApiException> skipped = new ArrayList<>();
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Unreadable.class, new JsonApiSerializer() {
+            @Override
+            protected JsonApiErrorPolicy errorPolicy() {
+                return JsonApiErrorPolicy.LENIENT;
+            }
+
+            @Override
+            protected void memberSkipped(final JsonApiException exception) {
+                skipped.add(exception);
+            }
+        });
+        final ObjectMapper lenientMapper = new ObjectMapper().registerModule(module);
+
+        final JsonNode json = lenientMapper.readTree(lenientMapper.writeValueAsString(
+                new JsonApiResponse.Builder(Arrays.asList(new Unreadable())).build()));
+
+        assertEquals("x", json.get("data").get(0).get("attributes").get("name").asText());
+        assertFalse(json.get("data").get(0).get("attributes").has("secret"));
+        assertEquals("/data/0/attributes/secret", skipped.get(0).getPointer());
+
+        final JsonNode errors = lenientMapper.readTree(
+                lenientMapper.writeValueAsString(new JsonApiErrorDocument(skipped))).get("errors");
+        assertEquals("500", errors.get(0).get("status").asText());
+        assertEquals("Not allowed", errors.get(0).get("detail").asText());
+        assertEquals("/data/0/attributes/secret", errors.get(0).get("source").get("pointer").asText());
+    }
+
+    @Test
+    public void documentsAndResourcesAreReportedToTheListener() throws Exception {
+        final List<String> events = new ArrayList<>();
+        final JsonApiListener listener = new JsonApiListener() {
+            @Override
+            public void resourceWritten(final Class<?> type, final long nanos) {
+                events.add("resource " + type.getSimpleName());
+            }
+
+            @Override
+            public void documentWritten(final int resources, final int included, final long nanos) {
+                events.add("document " + resources + " " + included);
+            }
+
+            @Override
+            public void metadataBuilt(final Class<?> type, final long nanos) {
+                events.add("metadata " + type.getSimpleName());
+            }
+        };
+        final JsonApiSerializer serializer = new JsonApiSerializer() {
+            @Override
+            protected JsonApiListener listener() {
+                return listener;
+            }
+        };
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Person.class, serializer);
+        module.addSerializer(BlogPost.class, serializer);
+        final ObjectMapper measuredMapper = new ObjectMapper().registerModule(module);
+
+        final BlogPost second = post();
+        second.setId(8L);
+        measuredMapper.writeValueAsString(new JsonApiResponse.Builder(Arrays.asList(post(), second))
+                .includePaths("author").build());
+
+        // The author is collected for inclusion while the first post is written
+        assertEquals(Arrays.asList("metadata BlogPost", "metadata Person", "resource BlogPost", "resource BlogPost",
+                "resource Person", "document 2 1"), events);
+    }
+
+    @Test
+    public void pagesAreLinkedByCursors() throws Exception {
+        final JsonApiPage firstPage = new JsonApiPage.Builder(Person.class, 2).sort("first-name").build();
+        final JsonNode first = write(new JsonApiResponse.Builder(
+                Arrays.asList(person(1, "Ada"), person(3, "Alan"), person(2, "Grace")).iterator())
+                .page(firstPage).build());
+
+        assertEquals(2, first.get("data").size());
+        assertEquals("/jsonapi/persons?page[size]=2&sort=first-name", first.get("links").get("first").asText());
+        assertTrue(first.get("links").get("prev").isNull());
+        assertTrue(first.get("meta").get("page").get("more").asBoolean());
+
+        final String next = first.get("links").get("next").asText();
+        final String cursor = next.substring(next.indexOf("page[after]=") + "page[after]=".length());
+        final JsonApiPage secondPage = new JsonApiPage.Builder(Person.class, 2).sort("first-name").after(cursor)
+                .build();
+        assertEquals(Arrays.asList("Alan", 3L), secondPage.getCursorValues());
+
+        final JsonNode second = write(new JsonApiResponse.Builder(Arrays.asList(person(2, "Grace")))
+                .page(secondPage).build());
+        assertEquals(1, second.get("data").size());
+        assertTrue(second.get("links").get("next").isNull());
+        assertFalse(second.get("meta").get("page").get("more").asBoolean());
+        assertTrue(second.get("links").get("prev").asText().contains("page[before]="));
+    }
+
+    @Test
+    public void cursorValuesAreReadAsTheTypesOfTheirAttributes() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Meeting.class, new JsonApiSerializer());
+        final ObjectMapper meetingMapper = new ObjectMapper().registerModule(module);
+        final JsonApiPage firstPage = new JsonApiPage.Builder(Meeting.class, 1).sort("-starts-at")
+                .mapper(meetingMapper).build();
+        final JsonNode first = meetingMapper.readTree(meetingMapper.writeValueAsString(new JsonApiResponse.Builder(
+                Arrays.asList(new Meeting(2, new Date(1444435200042L)), new Meeting(1, new Date(0))))
+                .page(firstPage).build()));
+
+        final String next = first.get("links").get("next").asText();
+        final JsonApiPage secondPage = new JsonApiPage.Builder(Meeting.class, 1).sort("-starts-at")
+                .mapper(meetingMapper).after(next.substring(next.indexOf("page[after]=") + "page[after]=".length()))
+                .build();
+        assertEquals(Arrays.asList(new Date(1444435200042L), 2L), secondPage.getCursorValues());
+    }
+
+    @Test
+    public void cursorsOfAnotherSortAreRejected() throws Exception {
+        final JsonApiPage firstPage = new JsonApiPage.Builder(Person.class, 1).sort("first-name").build();
+        final JsonNode first = write(new JsonApiResponse.Builder(Arrays.asList(person(1, "Ada"), person(3, "Alan")))
+                .page(firstPage).build());
+        final String next = first.get("links").get("next").asText();
+
+        try {
+            new JsonApiPage.Builder(Person.class, 1).sort("-first-name")
+                    .after(next.substring(next.indexOf("page[after]=") + "page[after]=".length())).build();
+            fail();
+        } catch (final JsonApiException e) {
+            assertEquals("400", e.getStatus());
+            assertEquals("Invalid cursor", e.getTitle());
+        }
+    }
+
+    @Test
+    public void pagesBeforeACursorAreWrittenInSortOrder() throws Exception {
+        final JsonApiPage page = new JsonApiPage.Builder(Person.class, 2).before("W1tdLDVd").build();
+        final JsonNode json = write(new JsonApiResponse.Builder(
+                Arrays.asList(person(4, "Dan"), person(3, "Cy"), person(2, "Bo")))
+                .page(page).build());
+
+        assertEquals("3", json.get("data").get(0).get("id").asText());
+        assertEquals("4", json.get("data").get(1).get("id").asText());
+        assertFalse(json.get("links").get("prev").isNull());
+        assertFalse(json.get("links").get("next").isNull());
+    }
+
+    @Test
+    public void unchangedVersionsAreWrittenFromTheFragmentCache() throws Exception {
+        final JsonApiFragmentCache cache = new JsonApiFragmentCache(1 << 20);
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Plan.class, new JsonApiSerializer() {
+            @Override
+            protected JsonApiFragmentCache fragmentCache() {
+                return cache;
+            }
+        });
+        final ObjectMapper cachingMapper = new ObjectMapper().registerModule(module);
+        final Plan plan = new Plan();
+        plan.id = 1L;
+        plan.name = "Basic";
+        plan.version = 1;
+
+        final String first = cachingMapper.writeValueAsString(new JsonApiResponse.Builder(plan).build());
+        plan.name = "Renamed";
+        final String cached = cachingMapper.writeValueAsString(new JsonApiResponse.Builder(plan).build());
+        plan.version = 2;
+        final JsonNode changed = cachingMapper.readTree(
+                cachingMapper.writeValueAsString(new JsonApiResponse.Builder(Arrays.asList(plan)).build()));
+
+        assertEquals(first, cached);
+        assertEquals("Basic", cachingMapper.readTree(cached).get("data").get("attributes").get("name").asText());
+        assertEquals("Renamed", changed.get("data").get(0).get("attributes").get("name").asText());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void failuresInCachedFragmentsPointIntoTheDocument() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Plan.class, new JsonApiSerializer() {
+            @Override
+            protected JsonApiFragmentCache fragmentCache() {
+                return new JsonApiFragmentCache(1 << 20);
+            }
+        });
+        final ObjectMapper cachingMapper = new ObjectMapper().registerModule(module);
+        final Plan readable = new Plan();
+        readable.id = 1L;
+        readable.version = 1;
+        final Plan unreadable = new UnreadablePlan();
+        unreadable.id = 2L;
+        unreadable.version = 1;
+
+        try {
+            cachingMapper.writeValueAsString(new JsonApiResponse.Builder(Arrays.asList(readable, unreadable)).build());
+            fail();
+        } catch (final JsonMappingException e) {
+            assertEquals("/data/1/attributes/name", ((JsonApiException) e.getCause()).getPointer());
+        }
+    }
+
+    @Test
+    public void resourcesWritingOtherResourcesAreNotCached() throws Exception {
+        final JsonApiFragmentCache cache = new JsonApiFragmentCache(1 << 20);
+        final JsonApiSerializer serializer = new JsonApiSerializer() {
+            @Override
+            protected JsonApiFragmentCache fragmentCache() {
+                return cache;
+            }
+        };
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Team.class, serializer);
+        module.addSerializer(Sponsorship.class, serializer);
+        module.addSerializer(Person.class, serializer);
+        final ObjectMapper cachingMapper = new ObjectMapper().registerModule(module);
+        final Team team = new Team();
+        team.id = 1L;
+        team.version = 1;
+        team.members.add(person(1, "Ada"));
+        final Sponsorship sponsorship = new Sponsorship();
+        sponsorship.id = 2L;
+        sponsorship.version = 1;
+        sponsorship.sponsor = person(3, "Alan");
+
+        cachingMapper.writeValueAsString(new JsonApiResponse.Builder(team).build());
+        cachingMapper.writeValueAsString(new JsonApiResponse.Builder(sponsorship).build());
+        // Neither version changes, as the members are not owned by the team nor the sponsor by the sponsorship
+        team.members.add(person(2, "Grace"));
+        sponsorship.sponsor.setFirstName("Alan M.");
+        final JsonNode changedTeam = cachingMapper.readTree(
+                cachingMapper.writeValueAsString(new JsonApiResponse.Builder(team).build()));
+        final JsonNode changedSponsorship = cachingMapper.readTree(
+                cachingMapper.writeValueAsString(new JsonApiResponse.Builder(sponsorship).build()));
+
+        assertEquals(2, changedTeam.get("data").get("relationships").get("members").get("data").size());
+        assertEquals("Alan M.", changedSponsorship.get("data").get("attributes").get("sponsor").get("attributes")
+                .get("first-name").asText());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void unloadedIncludedResourcesAreLoadedInOneBatchPerType() throws Exception {
+        final JsonApiIdentifierResolver resolver = new JsonApiIdentifierResolver() {
+            @Override
+            public Object identifier(final Object resource) {
+                return (resource instanceof UnloadedPerson) ? ((Person) resource).id : null;
+            }
+
+            @Override
+            public Class<?> resourceClass(final Object resource) {
+                return (resource instanceof UnloadedPerson) ? Person.class : resource.getClass();
+            }
+
+            @Override
+            public boolean isInitialized(final Object related) {
+                return !(related instanceof UnloadedPerson);
+            }
+        };
+        final JsonApiSerializer serializer = new JsonApiSerializer() {
+            @Override
+            protected JsonApiIdentifierResolver identifierResolver() {
+                return resolver;
+            }
+        };
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(BlogPost.class, serializer);
+        module.addSerializer(Person.class, serializer);
+        final ObjectMapper loadingMapper = new ObjectMapper().registerModule(module);
+
+        final List<BlogPost> posts = new ArrayList<>();
+        for (long id = 5; id <= 7; id++) {
+            final UnloadedPerson author = new UnloadedPerson();
+            author.setId(id % 2);
+            final BlogPost post = post();
+            post.setId(id);
+            post.setAuthor(author);
+            posts.add(post);
+        }
+        final List<Set<Object>> batches = new ArrayList<>();
+        final JsonApiBatchLoader loader = (type, ids) -> {
+            assertEquals(Person.class, type);
+            batches.add(ids);
+            final Map<Object, Object> people = new HashMap<>();
+            for (final Object id : ids) {
+                people.put(id, person((Long) id, "Loaded " + id));
+            }
+            return people;
+        };
+
+        final JsonNode json = loadingMapper.readTree(loadingMapper.writeValueAsString(
+                new JsonApiResponse.Builder(posts).includePaths("author")
+                        .includeLoader(loader, ForkJoinPool.commonPool()).build()));
+
+        assertEquals(Arrays.asList(new HashSet<>(Arrays.asList(1L, 0L))), batches);
+        assertEquals(2, json.get("included").size());
+        assertEquals("Loaded 1", json.get("included").get(0).get("attributes").get("first-name").asText());
+    }
+
+    @Test
+    public void unloadedDataIsNotRenderedInParallel() throws Exception {
+        final JsonApiIdentifierResolver resolver = new JsonApiIdentifierResolver() {
+            @Override
+            public Object identifier(final Object resource) {
+                return (resource instanceof UnloadedPerson) ? ((Person) resource).id : null;
+            }
+
+            @Override
+            public Class<?> resourceClass(final Object resource) {
+                return (resource instanceof UnloadedPerson) ? Person.class : resource.getClass();
+            }
+
+            @Override
+            public boolean isInitialized(final Object related) {
+                return !(related instanceof UnloadedPerson);
+            }
+        };
+        final JsonApiSerializer serializer = new JsonApiSerializer() {
+            @Override
+            protected JsonApiIdentifierResolver identifierResolver() {
+                return resolver;
+            }
+        };
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(BlogPost.class, serializer);
+        module.addSerializer(Person.class, serializer);
+        final ObjectMapper loadingMapper = new ObjectMapper().registerModule(module);
+        final List<BlogPost> posts = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            final BlogPost post = post();
+            post.setId(id);
+            posts.add(post);
+        }
+        final UnloadedPerson author = new UnloadedPerson();
+        author.setId(1L);
+        posts.get(2).setAuthor(author);
+        final JsonApiBatchLoader loader = (type, ids) -> Collections.singletonMap(1L, person(1L, "Loaded"));
+        final AtomicInteger tasks = new AtomicInteger();
+        final Executor executor = task -> {
+            tasks.incrementAndGet();
+            task.run();
+        };
+
+        final byte[] linked = loadingMapper.writeValueAsBytes(
+                new JsonApiResponse.Builder(posts).parallel(executor, 1).build());
+        assertEquals(4, tasks.getAndSet(0));
+        final byte[] included = loadingMapper.writeValueAsBytes(new JsonApiResponse.Builder(posts)
+                .includePaths("author").includeLoader(loader).parallel(executor, 1).build());
+
+        assertEquals(0, tasks.get());
+        assertArrayEquals(loadingMapper.writeValueAsBytes(new JsonApiResponse.Builder(posts).build()), linked);
+        assertArrayEquals(loadingMapper.writeValueAsBytes(new JsonApiResponse.Builder(posts).includePaths("author")
+                .includeLoader(loader).build()), included);
+    }
+
+    @Test
+    public void resourcesMetAgainInsideThemselvesAreOnlyIdentified() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Category.class, new JsonApiSerializer());
+        final ObjectMapper graphMapper = new ObjectMapper().registerModule(module);
+        final Category root = new Category();
+        root.id = 1L;
+        final Category child = new Category();
+        child.id = 2L;
+        child.parent = root;
+        root.parent = child;
+
+        final JsonNode parent = graphMapper.readTree(graphMapper.writeValueAsString(
+                new JsonApiResponse.Builder(root).build())).get("data").get("attributes").get("parent");
+
+        assertEquals("2", parent.get("id").asText());
+        final JsonNode grandparent = parent.get("attributes").get("parent");
+        assertEquals("1", grandparent.get("id").asText());
+        assertEquals("categories", grandparent.get("type").asText());
+        assertFalse(grandparent.has("attributes"));
+    }
+
+    @Test
+    public void includePathsAreFollowedToTheMaximumDepth() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(Category.class, new JsonApiSerializer());
+        final ObjectMapper graphMapper = new ObjectMapper().registerModule(module);
+        final List<Category> categories = new ArrayList<>();
+        for (long id = 1; id <= 4; id++) {
+            final Category category = new Category();
+            category.id = id;
+            if (id > 1) {
+                categories.get((int) id - 2).children.add(category);
+            }
+            categories.add(category);
+        }
+
+        final JsonNode json = graphMapper.readTree(graphMapper.writeValueAsString(
+                new JsonApiResponse.Builder(categories.get(0)).includePaths("children.children.children")
+                        .maxIncludeDepth(2).build()));
 
+        assertEquals(2, json.get("included").size());
+        assertEquals("3", json.get("included").get(1).get("id").asText());
     }
 }
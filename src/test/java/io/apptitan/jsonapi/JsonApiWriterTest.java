@@ -0,0 +1,206 @@
+package io.apptitan.jsonapi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import io.apptitan.jsonapi.JsonApiSerializerTest.BlogPost;
+import io.apptitan.jsonapi.JsonApiSerializerTest.Person;
+import io.apptitan.jsonapi.JsonApiSerializerTest.UnloadedPerson;
+
+public class JsonApiWriterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JsonApiModule().addResources(
+            Person.class, BlogPost.class));
+    private final JsonApiWriter writer = new JsonApiWriter(mapper);
+
+    private static JsonApiResponse people(final int count) {
+        final List<Person> people = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final Person person = new Person();
+            person.setId((long) i);
+            person.setFirstName("Person " + i);
+            people.add(person);
+        }
+        return new JsonApiResponse.Builder(people).build();
+    }
+
+    @Test
+    public void smallDocumentsHaveAContentLength() throws Exception {
+        final JsonApiResponse response = people(2);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AtomicLong contentLength = new AtomicLong(-1);
+
+        final long written = writer.write(response, out, contentLength::set);
+
+        assertArrayEquals(mapper.writeValueAsBytes(response), out.toByteArray());
+        assertEquals(out.size(), written);
+        assertEquals(out.size(), contentLength.get());
+    }
+
+    @Test
+    public void largeDocumentsAreStreamed() throws Exception {
+        final JsonApiResponse response = people(100);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final AtomicLong contentLength = new AtomicLong(-1);
+
+        final long written = writer.write(response, out, 256, contentLength::set);
+
+        assertArrayEquals(mapper.writeValueAsBytes(response), out.toByteArray());
+        assertEquals(out.size(), written);
+        assertEquals(-1, contentLength.get());
+    }
+
+    @Test
+    public void documentsAreWrittenToByteBuffers() throws Exception {
+        final JsonApiResponse response = people(3);
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        final int written = writer.write(response, buffer);
+
+        assertEquals(buffer.position(), written);
+        assertArrayEquals(mapper.writeValueAsBytes(response), Arrays.copyOf(buffer.array(), written));
+    }
+
+    @Test
+    public void chunksRenderedInParallelAreWrittenInOrder() throws Exception {
+        final List<BlogPost> posts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final Person author = new Person();
+            author.setId((long) (i % 4));
+            author.setFirstName("Author " + (i % 4));
+            final BlogPost post = new BlogPost();
+            post.setId((long) i);
+            post.setTitle("Post " + i);
+            post.setAuthor(author);
+            posts.add(post);
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            writer.write(new JsonApiResponse.Builder(posts).includePaths("author").parallel(executor, 3).build(), out);
+
+            assertEquals(mapper.writeValueAsString(new JsonApiResponse.Builder(posts).includePaths("author").build()),
+                    out.toString("UTF-8"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void chunksSeeTheAttributesOfTheCall() throws Exception {
+        final SimpleModule module = new SimpleModule();
+        module.addSerializer(String.class, new JsonSerializer<String>() {
+            @Override
+            public void serialize(final String value, final JsonGenerator jgen, final SerializerProvider provider)
+                    throws IOException {
+                jgen.writeString(value + provider.getAttribute("suffix"));
+            }
+        });
+        // Sets an attribute for the call before the response is written
+        module.addSerializer(Suffixed.class, new JsonSerializer<Suffixed>() {
+            @Override
+            public void serialize(final Suffixed value, final JsonGenerator jgen, final SerializerProvider provider)
+                    throws IOException {
+                provider.setAttribute("suffix", "!");
+                provider.defaultSerializeValue(value.response, jgen);
+            }
+        });
+        final ObjectMapper suffixingMapper = new ObjectMapper().registerModule(module)
+                .registerModule(new JsonApiModule().addResources(Person.class));
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<?> people = (List<?>) people(10).getData();
+
+            final JsonNode json = suffixingMapper.readTree(suffixingMapper.writeValueAsBytes(
+                    new Suffixed(new JsonApiResponse.Builder(people).parallel(executor, 3).build())));
+
+            assertEquals("Person 9!", json.get("data").get(9).get("attributes").get("first-name").asText());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class Suffixed {
+        private final JsonApiResponse response;
+
+        Suffixed(final JsonApiResponse response) {
+            this.response = response;
+        }
+    }
+
+    /**
+     * Counts reads of its name, which happen when it is rendered
+     */
+    private static class CountedPerson extends Person {
+        private final AtomicInteger reads;
+
+        CountedPerson(final AtomicInteger reads) {
+            this.reads = reads;
+        }
+
+        @Override
+        public String getFirstName() {
+            reads.incrementAndGet();
+            return super.getFirstName();
+        }
+    }
+
+    @Test
+    public void chunksNotStartedAreCancelledWhenOneFails() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        final List<Person> people = new ArrayList<>();
+        people.add(new UnloadedPerson());
+        for (int i = 1; i < 4; i++) {
+            final Person person = new CountedPerson(reads);
+            person.setId((long) i);
+            people.add(person);
+        }
+        // Runs the first chunk, which fails, and holds back the others
+        final List<Runnable> queued = new ArrayList<>();
+        final Executor executor = task -> {
+            queued.add(task);
+            if (queued.size() == 1) {
+                task.run();
+            }
+        };
+
+        try {
+            writer.write(new JsonApiResponse.Builder(people).parallel(executor, 1).build(),
+                    new ByteArrayOutputStream());
+            fail();
+        } catch (final JsonMappingException e) {
+            assertEquals(JsonApiException.class, e.getCause().getClass());
+        }
+        for (final Runnable task : queued.subList(1, queued.size())) {
+            task.run();
+        }
+
+        assertTrue(queued.size() > 1);
+        assertEquals(0, reads.get());
+    }
+}
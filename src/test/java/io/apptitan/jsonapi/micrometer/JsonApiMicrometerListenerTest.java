@@ -0,0 +1,50 @@
+package io.apptitan.jsonapi.micrometer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class JsonApiMicrometerListenerTest {
+
+    private MeterRegistry registry;
+    private JsonApiMicrometerListener listener;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        listener = new JsonApiMicrometerListener(registry);
+    }
+
+    @Test
+    public void documentSizesAreRecordedPerOperation() {
+        listener.documentWritten(10, 2, 1000);
+        listener.documentRead(String.class, 1, 1000);
+        listener.documentRead(String.class, 3, 1000);
+
+        final DistributionSummary written = registry.get("jsonapi.document.resources").tag("operation", "write")
+                .summary();
+        assertEquals(1, written.count());
+        assertEquals(10, written.totalAmount(), 0);
+        final DistributionSummary read = registry.get("jsonapi.document.resources").tag("operation", "read")
+                .summary();
+        assertEquals(2, read.count());
+        assertEquals(4, read.totalAmount(), 0);
+        assertEquals(2, registry.get("jsonapi.document.included").summary().totalAmount(), 0);
+    }
+
+    @Test
+    public void resourceMetersAreTaggedWithTheType() {
+        listener.resourceWritten(String.class, 1000);
+        listener.resourceRead(Integer.class, 1000);
+        listener.metadataBuilt(String.class, 1000);
+
+        assertEquals(1, registry.get("jsonapi.resource.write").tag("type", "String").timer().count());
+        assertEquals(1, registry.get("jsonapi.resource.read").tag("type", "Integer").timer().count());
+        assertEquals(1, registry.get("jsonapi.metadata.builds").tag("type", "String").counter().count(), 0);
+    }
+}
@@ -0,0 +1,132 @@
+package io.apptitan.jsonapi.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.beans.PropertyDescriptor;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.processing.Processor;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.apptitan.jsonapi.JsonApiAccessorStrategy;
+import io.apptitan.jsonapi.JsonApiPropertyAccessor;
+
+public class JsonApiProcessorTest {
+
+    private static final String BOOK = "package sample;\n"
+            + "@javax.persistence.Entity\n"
+            + "public class Book {\n"
+            + "    @javax.persistence.Id\n"
+            + "    private Long id;\n"
+            + "    private String title;\n"
+            + "    public Long getId() { return id; }\n"
+            + "    public void setId(final Long id) { this.id = id; }\n"
+            + "    public String getTitle() { return title; }\n"
+            + "    public void setTitle(final String title) { this.title = title; }\n"
+            + "}\n";
+
+    private Path directory;
+    private final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jsonapi-processor");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Compiles {@code source}, the class {@code sample.<name>}, with the processor into the temporary directory
+     */
+    private boolean compile(final String name, final String source) throws IOException {
+        final Path sourceFile = directory.resolve("sample").resolve(name + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.write(sourceFile, source.getBytes("UTF-8"));
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, null)) {
+            final List<String> options = new ArrayList<>(Arrays.asList("-d", directory.toString(), "-s",
+                    directory.toString(), "-classpath", System.getProperty("java.class.path")));
+            final JavaCompiler.CompilationTask task = compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjects(sourceFile.toFile()));
+            task.setProcessors(Arrays.asList(new JsonApiProcessor()));
+            return task.call();
+        }
+    }
+
+    private List<String> warnings() {
+        return diagnostics.getDiagnostics().stream().filter(d -> d.getKind() == Diagnostic.Kind.WARNING)
+                .map(d -> d.getMessage(null)).collect(Collectors.toList());
+    }
+
+    @Test
+    public void generatedAccessorsCallGettersAndSetters() throws Exception {
+        assertTrue(compile("Book", BOOK));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { directory.toUri().toURL() },
+                getClass().getClassLoader())) {
+            final Class<?> book = loader.loadClass("sample.Book");
+            final JsonApiAccessorStrategy accessors = (JsonApiAccessorStrategy) loader
+                    .loadClass("sample." + JsonApiProcessor.ACCESSORS).getField("INSTANCE").get(null);
+            final JsonApiPropertyAccessor title = accessors.accessor(book,
+                    new PropertyDescriptor("title", book));
+            assertTrue(title.getClass().getName().startsWith("sample." + JsonApiProcessor.ACCESSORS));
+
+            final Object instance = book.newInstance();
+            title.set(instance, "Dune");
+            assertEquals("Dune", title.get(instance));
+            assertEquals("Dune", book.getMethod("getTitle").invoke(instance));
+
+            loader.loadClass("sample." + JsonApiProcessor.MODULE).newInstance();
+        }
+        assertTrue(Files.exists(
+                directory.resolve("META-INF/native-image/io.apptitan.jsonapi/sample/reflect-config.json")));
+        assertTrue(warnings().isEmpty());
+    }
+
+    @Test
+    public void annotationsOnGettersAreReported() throws Exception {
+        assertTrue(compile("Book", BOOK.replace("    @javax.persistence.Id\n", "")
+                .replace("    public Long getId()", "    @javax.persistence.Id public Long getId()")));
+
+        assertEquals(1, warnings().size());
+        assertTrue(warnings().get(0), warnings().get(0).contains("@Id is only read from fields"));
+        assertTrue(Files.exists(directory.resolve("sample").resolve(JsonApiProcessor.ACCESSORS + ".java")));
+    }
+
+    @Test
+    public void processorIsRegisteredAsAService() {
+        boolean registered = false;
+        for (final Processor processor : ServiceLoader.load(Processor.class)) {
+            registered |= processor instanceof JsonApiProcessor;
+        }
+        assertTrue(registered);
+    }
+}